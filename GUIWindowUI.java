@@ -26,6 +26,7 @@ import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Frame;
 import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Rectangle;
@@ -381,10 +382,7 @@ public class GUIWindowUI extends GUIWindowUIBase<FinrocGUI> implements ActionLis
         }
 
         // update strategies
-        GUIPanel gp = getCurPanel().getModel();
-        for (GUIPanel gp2 : getModel().getChildren()) {
-            updatePortStrategies(gp2, gp == gp2);
-        }
+        updatePortStrategies();
 
         // Connection Panel?
         if (miConnectionPanel.isSelected()) {
@@ -412,6 +410,19 @@ public class GUIWindowUI extends GUIWindowUIBase<FinrocGUI> implements ActionLis
         repaint();
     }
 
+    /**
+     * Update port strategies of all panels:
+     * Only ports of widgets that are currently visible (on selected tab in non-iconified window) use push strategy.
+     * Ports of all other widgets are switched to pull strategy - to save network bandwidth and CPU time.
+     */
+    private void updatePortStrategies() {
+        boolean iconified = (((JFrame)ui).getExtendedState() & Frame.ICONIFIED) != 0;
+        GUIPanel gp = getCurPanel().getModel();
+        for (GUIPanel gp2 : getModel().getChildren()) {
+            updatePortStrategies(gp2, (!iconified) && gp == gp2);
+        }
+    }
+
     /**
      * Update port strategies of specified panel
      *
@@ -759,8 +770,12 @@ public class GUIWindowUI extends GUIWindowUIBase<FinrocGUI> implements ActionLis
     public void windowActivated(WindowEvent e) {}
     public void windowClosed(WindowEvent e) {}
     public void windowDeactivated(WindowEvent e) {}
-    public void windowDeiconified(WindowEvent e) {}
-    public void windowIconified(WindowEvent e) {}
+    public void windowDeiconified(WindowEvent e) {
+        updatePortStrategies();
+    }
+    public void windowIconified(WindowEvent e) {
+        updatePortStrategies();
+    }
     public void windowOpened(WindowEvent e) {}
 
 
@@ -836,6 +851,7 @@ public class GUIWindowUI extends GUIWindowUIBase<FinrocGUI> implements ActionLis
         // from TabbedPane
         updateToolBarState();
         connectionPanel.setRightTree(getCurPanel().getModel().getTreeModel());
+        updatePortStrategies();
     }
 
     class CreateWidgetAction extends AbstractAction {
@@ -1042,10 +1058,7 @@ public class GUIWindowUI extends GUIWindowUIBase<FinrocGUI> implements ActionLis
         }
 
         // update strategies
-        GUIPanel gp = getCurPanel().getModel();
-        for (GUIPanel gp2 : getModel().getChildren()) {
-            updatePortStrategies(gp2, gp == gp2);
-        }
+        updatePortStrategies();
     }
 
     @Override
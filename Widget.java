@@ -83,6 +83,12 @@ public abstract class Widget extends DataModelBase < GUI, GUIPanel, WidgetPort<?
     /** Background color of widget (at least of the border) */
     private Color background = getDefaultColor(Theme.DefaultColor.BACKGROUND);
 
+    /** Maximum rate at which widget is redrawn on port updates (0 = unlimited) - applies to repaints triggered via WidgetUI.scheduleRepaint() */
+    private int maxDisplayRefreshHz = 0;
+
+    /** Minimum interval between two updates of widget's ports sent via network (0 = port default) */
+    private int minPortUpdateIntervalMs = 0;
+
     /** temporary list */
     @NotInPropertyEditor
     private List<AbstractFile> embeddedFiles;
@@ -292,6 +298,38 @@ public abstract class Widget extends DataModelBase < GUI, GUIPanel, WidgetPort<?
         this.labelColor = labelColor;
     }
 
+    public int getMaxDisplayRefreshHz() {
+        return maxDisplayRefreshHz;
+    }
+
+    public void setMaxDisplayRefreshHz(int maxDisplayRefreshHz) {
+        this.maxDisplayRefreshHz = Math.max(0, maxDisplayRefreshHz);
+    }
+
+    public int getMinPortUpdateIntervalMs() {
+        return minPortUpdateIntervalMs;
+    }
+
+    public void setMinPortUpdateIntervalMs(int minPortUpdateIntervalMs) {
+        this.minPortUpdateIntervalMs = Math.max(0, minPortUpdateIntervalMs);
+        updatePortUpdateIntervals();
+    }
+
+    /**
+     * Applies minimum port update interval to all of widget's ports
+     * (called after widget properties have changed)
+     */
+    public void updatePortUpdateIntervals() {
+        if (children == null) {
+            return;
+        }
+        for (WidgetPort<?> wp : children) {
+            if (wp.getFrameworkElement() != null) {
+                wp.setMinNetUpdateInterval(minPortUpdateIntervalMs);
+            }
+        }
+    }
+
     /** may be overriden */
     protected void setDefaultColors() {
     }
@@ -337,6 +375,12 @@ public abstract class Widget extends DataModelBase < GUI, GUIPanel, WidgetPort<?
         node.addChildNode("label").setContent(label);
         serialize(node.addChildNode("labelColor"), labelColor);
         serialize(node.addChildNode("background"), background);
+        if (maxDisplayRefreshHz > 0) {
+            node.addChildNode("maxDisplayRefreshHz").setContent("" + maxDisplayRefreshHz);
+        }
+        if (minPortUpdateIntervalMs > 0) {
+            node.addChildNode("minPortUpdateIntervalMs").setContent("" + minPortUpdateIntervalMs);
+        }
 
         if (embeddedFiles != null) {
             XMLNode fileNode = node.addChildNode("embeddedFiles"); // TODO: it's ugly that embedded files are serialized twice; change this, when XStream is discarded
@@ -361,6 +405,10 @@ public abstract class Widget extends DataModelBase < GUI, GUIPanel, WidgetPort<?
                     labelColor = deserializeColor(child);
                 } else if (child.getName().equals("background")) {
                     background = deserializeColor(child);
+                } else if (child.getName().equals("maxDisplayRefreshHz")) {
+                    maxDisplayRefreshHz = Integer.parseInt(child.getTextContent());
+                } else if (child.getName().equals("minPortUpdateIntervalMs")) {
+                    minPortUpdateIntervalMs = Integer.parseInt(child.getTextContent());
                 } else if (child.getName().equals("embeddedFiles")) {
                     embeddedFiles = new ArrayList<AbstractFile>();
                     for (XMLNode fileNode : child.children()) {
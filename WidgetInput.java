@@ -22,12 +22,17 @@
 package org.finroc.tools.gui;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.finroc.tools.gui.commons.EventRouter;
+import org.rrlib.serialization.BinaryOutputStream;
 import org.rrlib.serialization.BinarySerializable;
+import org.rrlib.serialization.FixedBuffer;
+import org.rrlib.serialization.MemoryBuffer;
 import org.rrlib.serialization.NumericRepresentation;
 
 import org.finroc.core.FrameworkElementFlags;
+import org.finroc.core.port.AbstractPort;
 import org.finroc.core.port.Port;
 import org.finroc.core.port.PortCreationInfo;
 import org.finroc.core.port.PortListener;
@@ -44,6 +49,16 @@ import org.finroc.core.port.std.PortQueueFragmentRaw;
  */
 public class WidgetInput {
 
+    /** Number of repaints that were skipped, because values received were identical to the last ones (for diagnostics) */
+    private static final AtomicLong suppressedRepaints = new AtomicLong();
+
+    /**
+     * @return Number of repaints that were skipped, because values received were identical to the last ones
+     */
+    public static long getSuppressedRepaintCount() {
+        return suppressedRepaints.get();
+    }
+
     public static class Std<T extends BinarySerializable> extends WidgetInputPort<Port<T>> {
 
         /** UID */
@@ -54,10 +69,58 @@ public class WidgetInput {
             return new Port<T>(getPci());
         }
 
+        /** Hash of binary representation of last value passed to valueChanged() */
+        private transient long lastValueHash;
+
+        /** Has valueChanged() been called before? */
+        private transient boolean lastValueHashValid;
+
+        /** Buffer and stream for computing hashes of binary representations (reused for every value) */
+        private transient MemoryBuffer hashBuffer;
+        private transient BinaryOutputStream hashStream;
+
         public void addChangeListener(PortListener<T> listener) {
             EventRouter.addListener(getPort(), "addPortListenerRaw", listener);
         }
 
+        /**
+         * Compares binary hash of value with the one of the value this method was called with last time.
+         * Widgets can call this in portChanged() in order to skip repaints when a robot republishes unchanged values.
+         *
+         * @param value New value received
+         * @return True if value differs from last value (widget needs to be repainted)
+         */
+        public boolean valueChanged(T value) {
+            if (value == null) {
+                return true;
+            }
+            long hash;
+            try {
+                if (hashBuffer == null) {
+                    hashBuffer = new MemoryBuffer();
+                    hashStream = new BinaryOutputStream(hashBuffer);
+                } else {
+                    hashStream.reset();
+                }
+                value.serialize(hashStream);
+                hashStream.flush();
+                FixedBuffer buffer = hashBuffer.getBuffer();
+                hash = 0xcbf29ce484222325L; // FNV-1a
+                for (int i = 0, n = hashBuffer.getSize(); i < n; i++) {
+                    hash = (hash ^ (buffer.getByte(i) & 0xFF)) * 0x100000001b3L;
+                }
+            } catch (Exception e) {
+                return true;
+            }
+            if (lastValueHashValid && hash == lastValueHash) {
+                suppressedRepaints.incrementAndGet();
+                return false;
+            }
+            lastValueHash = hash;
+            lastValueHashValid = true;
+            return true;
+        }
+
         public T getAutoLocked() {
             if ((super.defaultFlags & FrameworkElementFlags.PUSH_STRATEGY) != 0 && (!getPort().pushStrategy())) {
                 getPort().setPushStrategy(true); // we still/soon seem to need push strategy
@@ -98,42 +161,171 @@ public class WidgetInput {
             return new Port<NumericRepresentation>(getPci().derive(NumericRepresentation.TYPE));
         }
 
+        /** Listener that updates primitive value cache (null if cache is disabled) */
+        private transient ValueCacheUpdater valueCacheUpdater;
+
+        /** Cached current value (only valid if value cache is enabled) */
+        private transient volatile double cachedDouble;
+        private transient volatile long cachedLong;
+
+        /** Time when cached value was received (System.currentTimeMillis()) */
+        private transient volatile long cachedValueTimestamp;
+
+        /** Last value passed to valueChanged() */
+        private transient long lastValueBits, lastValueLong;
+
+        /** Has valueChanged() been called before? */
+        private transient boolean lastValueValid;
+
         public void addChangeListener(PortListener<NumericRepresentation> listener) {
             EventRouter.addListener(getPort(), "addPortListenerRaw", listener);
         }
 
+        /**
+         * Enables primitive value cache:
+         * Current value is stored in volatile primitive variables whenever a new value is received.
+         * getInt() and getDouble() then return the cached value - without acquiring any locks or allocating objects.
+         * (should be enabled for inputs that are frequently read e.g. while painting)
+         */
+        public void enableValueCache() {
+            if (valueCacheUpdater == null) {
+                valueCacheUpdater = new ValueCacheUpdater();
+                updateValueCache(getAutoLocked());
+                ThreadLocalCache.getFast().releaseAllLocks();
+                addChangeListener(valueCacheUpdater);
+            }
+        }
+
+        /**
+         * @return Is primitive value cache enabled?
+         */
+        public boolean isValueCacheEnabled() {
+            return valueCacheUpdater != null;
+        }
+
+        /**
+         * @return Time when cached value was received (System.currentTimeMillis()) - 0 if value cache is disabled
+         */
+        public long getCachedValueTimestamp() {
+            return cachedValueTimestamp;
+        }
+
+        /**
+         * Updates value cache with new value of port (does nothing if value cache is disabled).
+         * The value cache is updated by a port listener - which is notified after listeners that were registered earlier
+         * (e.g. a WidgetPorts collection containing this port). Such listeners can call this before scheduling a repaint
+         * so that the repaint does not read the previous value.
+         *
+         * @param value New value of port
+         */
+        public void updateValueCache(NumericRepresentation value) {
+            if (valueCacheUpdater != null && value != null) {
+                Number n = value.getNumericRepresentation();
+                cachedLong = n.longValue();
+                cachedDouble = n.doubleValue();
+                cachedValueTimestamp = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Compares value numerically with the value this method was called with last time.
+         * Widgets can call this in portChanged() in order to skip repaints when a robot republishes unchanged values.
+         *
+         * @param value New value received
+         * @return True if value differs from last value (widget needs to be repainted)
+         */
+        public boolean valueChanged(NumericRepresentation value) {
+            if (value == null) {
+                return true;
+            }
+            Number n = value.getNumericRepresentation();
+            long bits = Double.doubleToLongBits(n.doubleValue());
+            long l = n.longValue();
+            if (lastValueValid && bits == lastValueBits && l == lastValueLong) {
+                suppressedRepaints.incrementAndGet();
+                return false;
+            }
+            lastValueBits = bits;
+            lastValueLong = l;
+            lastValueValid = true;
+            return true;
+        }
+
         public int getInt() {
+            if (valueCacheUpdater != null) {
+                return (int)cachedLong;
+            }
             int result = getAutoLocked().getNumericRepresentation().intValue();
             ThreadLocalCache.getFast().releaseAllLocks();
             return result;
         }
 
         public double getDouble() {
+            if (valueCacheUpdater != null) {
+                return cachedDouble;
+            }
             double result = getAutoLocked().getNumericRepresentation().doubleValue();
             ThreadLocalCache.getFast().releaseAllLocks();
             return result;
         }
 
+        /** Updates value cache on port changes */
+        private class ValueCacheUpdater implements PortListener<NumericRepresentation> {
+
+            @Override
+            public void portChanged(AbstractPort origin, NumericRepresentation value) {
+                updateValueCache(value);
+            }
+        }
+
         public NumericRepresentation getAutoLocked() {
             return (NumericRepresentation)asPort().getAutoLocked();
         }
     }
 
     /**
-     * Queued input (default queue size is 2)
+     * Queued input (default queue depth is 2)
      *
-     * Contains additional functionality to get data with same timestamp from multiple queued inputs
+     * Contains additional functionality to get data with same timestamp from multiple queued inputs.
+     * For this purpose, the last values received are kept in a buffer sorted by timestamp
+     * (its depth can be configured with setQueueDepth()).
+     * Values are inserted at their sorted position when they are dequeued - so the buffer is never sorted during lookups.
+     * As timestamps are usually monotonic, inserting is mostly an append.
      */
     public static class Queue<T extends BinarySerializable> extends Std<T> {
 
+        /** UID */
+        private static final long serialVersionUID = -1683734207937587224L;
+
+        /** Default queue depth */
+        public static final int DEFAULT_QUEUE_DEPTH = 2;
+
+        /** Number of values that are buffered for finding data with consistent timestamps */
+        private int queueDepth = DEFAULT_QUEUE_DEPTH;
+
         @Override
         public PortCreationInfo getPci() {
             PortCreationInfo info = super.getPci();
             info.flags |= FrameworkElementFlags.HAS_QUEUE | FrameworkElementFlags.USES_QUEUE;
-            info.maxQueueSize = 2;
+            info.maxQueueSize = queueDepth;
             return info;
         }
 
+        /**
+         * @param queueDepth Number of values that are buffered for finding data with consistent timestamps
+         * (should be set before port is created - e.g. in widget's constructor)
+         */
+        public void setQueueDepth(int queueDepth) {
+            this.queueDepth = Math.max(1, queueDepth);
+        }
+
+        /**
+         * @return Number of values that are buffered for finding data with consistent timestamps
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
         public PortQueueFragmentRaw dequeueAll() {
             ((PortBase)getPort()).dequeueAllRaw(queueFragment);
             return queueFragment;
@@ -149,23 +341,46 @@ public class WidgetInput {
          * @return Returns true if consistent data could be found; false if not
          */
         public static boolean getConsistentData(PortDataManager[] result, Queue<?> ... inputs) {
+            return getConsistentData(result, 0, inputs);
+        }
+
+        /**
+         * Get data with the latest common timestamp from all specified inputs
+         * (caller needs not to worry about locks; data is locked until next call to this method - or until port disposal)
+         * (note: does not work properly in conjunction with calling dequeueAll on any of the inputs)
+         *
+         * Buffered values older than the returned ones are released.
+         *
+         * Each of the first input's buffered values is looked up in the other inputs with a binary search
+         * (O(n * m * log n) in the worst case with queue depth n and m inputs - O(m * log n) if the newest values match).
+         *
+         * @param result Array to place result in (PortDataManger with data from every input on success, null entries otherwise). Must have sufficient length.
+         * @param tolerance Maximum difference between timestamp of first input and timestamps of the other inputs
+         * @param inputs Inputs to get consistent data from
+         * @return Returns true if consistent data could be found; false if not
+         */
+        public static boolean getConsistentData(PortDataManager[] result, long tolerance, Queue<?> ... inputs) {
             for (Queue<?> input : inputs) {
                 input.dequeueNewValues();
             }
-            for (int i = 0; i < 2; i++) {
+            Queue<?> reference = inputs[0];
+            for (int i = reference.count - 1; i >= 0; i--) {
+                long timestamp = reference.getTimestamp(i);
                 boolean consistent = true;
-                result[0] = i == 0 ? inputs[0].newestValue : inputs[0].secondNewestValue;
-                if (result[0] == null) {
-                    continue;
-                }
                 for (int j = 1; j < inputs.length; j++) {
-                    result[j] = (inputs[j].newestValue != null && inputs[j].newestValue.getTimestamp().longValue() == result[0].getTimestamp().longValue()) ? inputs[j].newestValue : inputs[j].secondNewestValue;
-                    if (result[j] == null || result[j].getTimestamp().longValue() != result[0].getTimestamp().longValue()) {
+                    if (inputs[j].findNearest(timestamp, tolerance) < 0) {
                         consistent = false;
                         break;
                     }
                 }
                 if (consistent) {
+                    result[0] = reference.getValue(i);
+                    reference.releaseOlderValues(i);
+                    for (int j = 1; j < inputs.length; j++) {
+                        int index = inputs[j].findNearest(timestamp, tolerance);
+                        result[j] = inputs[j].getValue(index);
+                        inputs[j].releaseOlderValues(index);
+                    }
                     return true;
                 }
             }
@@ -175,37 +390,129 @@ public class WidgetInput {
 
         @Override
         public void dispose() {
-            if (newestValue != null) {
-                newestValue.releaseLock();
-            }
-            if (secondNewestValue != null) {
-                secondNewestValue.releaseLock();
-            }
+            releaseOlderValues(count);
             super.dispose();
         }
 
         private transient PortQueueFragmentRaw queueFragment = new PortQueueFragmentRaw();
-        private transient PortDataManager newestValue, secondNewestValue;
+
+        /** Ring buffer with buffered values - sorted by timestamp */
+        private transient PortDataManager[] values;
+
+        /** Timestamps of buffered values (same index as values) */
+        private transient long[] timestamps;
+
+        /** Index of oldest value in ring buffer */
+        private transient int first;
+
+        /** Number of buffered values */
+        private transient int count;
 
         @Override
         public void restore(Widget parent) {
             queueFragment = new PortQueueFragmentRaw();
+            if (queueDepth < 1) {
+                queueDepth = DEFAULT_QUEUE_DEPTH; // not set in GUI files created before queue depth was configurable
+            }
             super.restore(parent);
         }
 
         private void dequeueNewValues() {
+            if (values == null || values.length != queueDepth) {
+                releaseOlderValues(count);
+                values = new PortDataManager[queueDepth];
+                timestamps = new long[queueDepth];
+                first = 0;
+            }
             ((PortBase)getPort()).dequeueAllRaw(queueFragment);
             PortDataManager dequeued;
             while ((dequeued = queueFragment.dequeueUnsafe()) != null) {
-                if (secondNewestValue != null) {
-                    secondNewestValue.releaseLock();
+                addValue(dequeued);
+            }
+            if (count == 0) {
+                PortDataManager current = ((PortBase)getPort()).getLockedUnsafeRaw(true);
+                if (current != null) {
+                    addValue(current);
                 }
-                secondNewestValue = newestValue;
-                newestValue = dequeued;
             }
-            if (newestValue == null) {
-                newestValue = ((PortBase)getPort()).getLockedUnsafeRaw(true);
+        }
+
+        /**
+         * Adds value to buffer at position sorted by timestamp (oldest value is released if buffer is full).
+         * Appending is O(1); values arriving out of order are moved to their position by shifting newer ones.
+         *
+         * @param value Value to add (locked)
+         */
+        private void addValue(PortDataManager value) {
+            if (count == values.length) {
+                releaseOlderValues(1);
+            }
+            long timestamp = value.getTimestamp().longValue();
+            int i = count;
+            while (i > 0 && getTimestamp(i - 1) > timestamp) { // usually values arrive in order
+                values[physicalIndex(i)] = values[physicalIndex(i - 1)];
+                timestamps[physicalIndex(i)] = timestamps[physicalIndex(i - 1)];
+                i--;
             }
+            values[physicalIndex(i)] = value;
+            timestamps[physicalIndex(i)] = timestamp;
+            count++;
+        }
+
+        /**
+         * Releases locks of the oldest values and removes them from buffer
+         *
+         * @param number Number of values to release
+         */
+        private void releaseOlderValues(int number) {
+            for (int i = 0; i < number; i++) {
+                values[first].releaseLock();
+                values[first] = null;
+                first = (first + 1) % values.length;
+                count--;
+            }
+        }
+
+        /**
+         * Binary search for the buffered value whose timestamp is closest to the specified one (O(log n))
+         *
+         * @param timestamp Timestamp to search for
+         * @param tolerance Maximum difference between timestamps
+         * @return Index of value (0 is oldest) - or -1 if there is no value within tolerance
+         */
+        private int findNearest(long timestamp, long tolerance) {
+            int low = 0, high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTimestamp(mid) < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            // low is now first index with timestamp >= searched timestamp
+            int result = -1;
+            long minDiff = tolerance;
+            if (low < count && getTimestamp(low) - timestamp <= minDiff) {
+                result = low;
+                minDiff = getTimestamp(low) - timestamp;
+            }
+            if (low > 0 && timestamp - getTimestamp(low - 1) <= minDiff && (result < 0 || timestamp - getTimestamp(low - 1) < minDiff)) {
+                result = low - 1;
+            }
+            return result;
+        }
+
+        private int physicalIndex(int index) {
+            return (first + index) % values.length;
+        }
+
+        private long getTimestamp(int index) {
+            return timestamps[physicalIndex(index)];
+        }
+
+        private PortDataManager getValue(int index) {
+            return values[physicalIndex(index)];
         }
     }
 
@@ -30,6 +30,7 @@ import org.finroc.core.datatype.DataTypeReference;
 import org.rrlib.logging.Log;
 import org.rrlib.logging.LogLevel;
 import org.rrlib.serialization.BinarySerializable;
+import org.rrlib.serialization.Serialization;
 import org.rrlib.serialization.StringInputStream;
 import org.finroc.core.port.Port;
 import org.finroc.core.port.PortCreationInfo;
@@ -137,6 +138,102 @@ public class WidgetOutput {
         }
     }
 
+    /**
+     * Collects values for multiple output ports and publishes them together.
+     *
+     * All values are stamped with the same timestamp - so receivers can tell
+     * which values belong to the same multi-value command.
+     *
+     * Batches can be reused after publish() or discard() has been called.
+     */
+    @SuppressWarnings( { "rawtypes", "unchecked" })
+    public static class PublishBatch {
+
+        /** Ports to publish values to */
+        private final ArrayList < WidgetOutputPort<? >> ports = new ArrayList < WidgetOutputPort<? >> ();
+
+        /** Buffers to publish (same index as port) */
+        private final ArrayList<BinarySerializable> buffers = new ArrayList<BinarySerializable>();
+
+        public PublishBatch add(Numeric port, int val) {
+            CoreNumber cn = port.asPort().getUnusedBuffer();
+            cn.setValue(val);
+            return addBuffer(port, cn);
+        }
+
+        public PublishBatch add(Numeric port, double val) {
+            CoreNumber cn = port.asPort().getUnusedBuffer();
+            cn.setValue(val);
+            return addBuffer(port, cn);
+        }
+
+        /**
+         * @param port Port to publish buffer to
+         * @param buffer Buffer obtained via port.getUnusedBuffer() (must not be modified after adding it)
+         */
+        public <T extends BinarySerializable> PublishBatch add(Std<T> port, T buffer) {
+            return addBuffer(port, buffer);
+        }
+
+        /**
+         * @param port Port to publish value to
+         * @param value Value (is copied)
+         */
+        public <T extends BinarySerializable> PublishBatch add(CC<T> port, T value) {
+            T buffer = port.asPort().getUnusedBuffer();
+            Serialization.deepCopy(value, buffer);
+            return addBuffer(port, buffer);
+        }
+
+        private PublishBatch addBuffer(WidgetOutputPort<?> port, BinarySerializable buffer) {
+            ports.add(port);
+            buffers.add(buffer);
+            return this;
+        }
+
+        /**
+         * Publishes all values that were added to this batch
+         */
+        public void publish() {
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < ports.size(); i++) {
+                Port port = (Port)ports.get(i).asPort();
+                BinarySerializable buffer = buffers.get(i);
+                if (port.hasCCType()) {
+                    ((CCPortDataManagerTL)CCPortDataManagerTL.getManager(buffer)).getTimestamp().setValue(timestamp);
+                } else {
+                    ((PortDataManager)PortDataManager.getManager(buffer)).getTimestamp().setValue(timestamp);
+                }
+                port.publish(buffer);
+            }
+            ports.clear();
+            buffers.clear();
+        }
+
+        /**
+         * Discards all values that were added to this batch
+         */
+        public void discard() {
+            for (int i = 0; i < ports.size(); i++) {
+                BinarySerializable buffer = buffers.get(i);
+                if (((Port)ports.get(i).asPort()).hasCCType()) {
+                    ((CCPortDataManagerTL)CCPortDataManagerTL.getManager(buffer)).recycleUnused();
+                } else {
+                    ((PortDataManager)PortDataManager.getManager(buffer)).recycleUnused();
+                }
+            }
+            ports.clear();
+            buffers.clear();
+        }
+
+        /**
+         * @return Number of values in batch
+         */
+        public int size() {
+            return ports.size();
+        }
+    }
+
     public static class Blackboard<T> { /*extends WidgetOutputPort<RawBlackboardClient.WritePort>*/
 
         /** UID */
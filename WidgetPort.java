@@ -59,10 +59,14 @@ public abstract class WidgetPort < P extends PortWrapperBase > extends DataModel
     /** Wrapped port */
     protected transient P port;
 
+    /** Minimum network update interval that was set for port (0 = port default) */
+    private transient int minNetUpdateInterval;
+
     @Override
     protected FrameworkElement createFrameworkElement() {
         if (port == null) {
             port = createPort();
+            minNetUpdateInterval = 0;
         }
         return port.getWrapped();
     }
@@ -112,6 +116,7 @@ public abstract class WidgetPort < P extends PortWrapperBase > extends DataModel
         if (defaultFlags == 0) {
             defaultFlags = getPort().getAllFlags();
         }
+        setMinNetUpdateInterval(parent.getMinPortUpdateIntervalMs());
     }
 
     public void clearConnections() {
@@ -271,6 +276,18 @@ public abstract class WidgetPort < P extends PortWrapperBase > extends DataModel
         }
     }
 
+    /**
+     * Set minimum interval between two port updates sent via network
+     *
+     * @param intervalMs Interval in ms (0 = port default)
+     */
+    public void setMinNetUpdateInterval(int intervalMs) {
+        if (intervalMs != minNetUpdateInterval) {
+            getPort().setMinNetUpdateInterval(intervalMs > 0 ? intervalMs : -1);
+            minNetUpdateInterval = intervalMs;
+        }
+    }
+
     /**
      * @return Unmodifiable set of connection links
      */
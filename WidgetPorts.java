@@ -22,6 +22,8 @@
 package org.finroc.tools.gui;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 
 import org.finroc.tools.gui.commons.EventRouter;
 import org.finroc.core.port.AbstractPort;
@@ -49,6 +51,9 @@ public class WidgetPorts < P extends WidgetPort<? >> extends ArrayList<P> implem
     private transient Object hashDelegate;  // necessary that this can be used with EventRouter
     private transient boolean initialized;
 
+    /** Lookup table for port indices (rebuilt by the modifying thread whenever list or its ports change) */
+    private transient volatile IdentityHashMap<AbstractPort, Integer> indexLookup;
+
     public WidgetPorts(String portNamePrefix, int initialSize, Class <? extends WidgetPort > type, Widget parent) {
         this.portNamePrefix = portNamePrefix;
         this.type = type;
@@ -65,11 +70,14 @@ public class WidgetPorts < P extends WidgetPort<? >> extends ArrayList<P> implem
     }
 
     public void initialize() {
+        ArrayList<AbstractPort> listenedPorts = new ArrayList<AbstractPort>(size());
         for (P p : this) {
             p.restore(parent);
-            addChangeListener(p);
+            addListenedPort(p, listenedPorts);
         }
+        EventRouter.addListeners(listenedPorts, "addPortListenerRaw", this);
         initialized = true;
+        updateIndexLookup();
     }
 
     @SuppressWarnings("unchecked")
@@ -83,23 +91,32 @@ public class WidgetPorts < P extends WidgetPort<? >> extends ArrayList<P> implem
         if (newSize < size()) {
             removeRange(newSize, size());
         } else if (newSize > size()) {
+            ArrayList<AbstractPort> listenedPorts = new ArrayList<AbstractPort>(newSize - size());
             while (newSize > size()) {
                 try {
                     P wp = (P)type.getConstructor().newInstance();
                     wp.description = portNamePrefix + " " + (size() + 1);
                     add(wp); // add it here, so that list already contains port when widget checks if this port is part list in order to determine port data type
                     wp.restore(parent);
-                    addChangeListener(wp);
+                    addListenedPort(wp, listenedPorts);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
             }
+            EventRouter.addListeners(listenedPorts, "addPortListenerRaw", this);
         }
+        updateIndexLookup();
     }
 
-    private void addChangeListener(P p) {
+    /**
+     * Adds port to list of ports to register as listener at - if its value changes can be listened to
+     *
+     * @param p Port
+     * @param listenedPorts List of ports to register at
+     */
+    private void addListenedPort(P p, ArrayList<AbstractPort> listenedPorts) {
         if (p.getPort() instanceof PortBase || p.getPort() instanceof CCPortBase) {
-            EventRouter.addListener(p.getPort(), "addPortListenerRaw", this);
+            listenedPorts.add(p.getPort());
         }
     }
 
@@ -111,18 +128,120 @@ public class WidgetPorts < P extends WidgetPort<? >> extends ArrayList<P> implem
         EventRouter.removeListener(this, l, WidgetPortsListener.class);
     }
 
+    public void addChangeListener(WidgetPortsListener.Indexed l) {
+        EventRouter.addListener(this, l, WidgetPortsListener.Indexed.class);
+    }
+
+    public void removeChangeListener(WidgetPortsListener.Indexed l) {
+        EventRouter.removeListener(this, l, WidgetPortsListener.Indexed.class);
+    }
+
     @Override
     public void portChanged(AbstractPort origin, Object value) {
-        EventRouter.fireChangeEvent(this, origin, value);
+        int index = EventRouter.hasListeners(this, WidgetPortsListener.Indexed.class) ? indexOf(origin) : -1;
+        EventRouter.fireChangeEvent(this, index, origin, value);
     }
 
+    /**
+     * @param ap Port
+     * @return Index of widget port wrapping this port (-1 if there is no such port in collection)
+     */
     public int indexOf(AbstractPort ap) {
+        IdentityHashMap<AbstractPort, Integer> lookup = indexLookup;
+        if (lookup == null) {
+            return -1;
+        }
+        Integer index = lookup.get(ap);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Rebuilds lookup table for port indices.
+     * Called by the thread modifying the list - and published via volatile field.
+     */
+    private void updateIndexLookup() {
+        IdentityHashMap<AbstractPort, Integer> lookup = new IdentityHashMap<AbstractPort, Integer>(size());
         for (int i = 0; i < size(); i++) {
-            if (get(i).getPort() == ap) {
-                return i;
+            P p = get(i);
+            if (p != null && p.getPort() != null) {
+                lookup.put(p.getPort(), i);
             }
         }
-        return -1;
+        indexLookup = lookup;
+    }
+
+    @Override
+    public boolean add(P e) {
+        boolean result = super.add(e);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public void add(int index, P element) {
+        super.add(index, element);
+        updateIndexLookup();
+    }
+
+    @Override
+    public boolean addAll(Collection <? extends P > c) {
+        boolean result = super.addAll(c);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection <? extends P > c) {
+        boolean result = super.addAll(index, c);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public P set(int index, P element) {
+        P result = super.set(index, element);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public P remove(int index) {
+        P result = super.remove(index);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean result = super.remove(o);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean result = super.removeAll(c);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean result = super.retainAll(c);
+        updateIndexLookup();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        updateIndexLookup();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+        updateIndexLookup();
     }
 
     @Override
@@ -40,4 +40,21 @@ public interface WidgetPortsListener extends EventListener {
      * @param value Port's new value (locked for duration of method call)
      */
     public void portChanged(WidgetPorts<?> origin, AbstractPort port, Object value);
+
+    /**
+     * Variant of listener that additionally receives index of port in collection
+     * (so that listeners do not need to call WidgetPorts.indexOf())
+     */
+    public interface Indexed extends EventListener {
+
+        /**
+         * Called whenever port's value has changed
+         *
+         * @param origin Port collection that value comes from
+         * @param index Index of port in collection (-1 if port is not part of collection anymore)
+         * @param port Port that value comes from
+         * @param value Port's new value (locked for duration of method call)
+         */
+        public void portChanged(WidgetPorts<?> origin, int index, AbstractPort port, Object value);
+    }
 }
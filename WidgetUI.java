@@ -87,6 +87,8 @@ public abstract class WidgetUI extends FastCustomDrawableComponent {
             }
             if (event == Event.WidgetPropertiesChanged) {
                 updateBorder();
+                model.updatePortUpdateIntervals();
+                setMaxRefreshRate(model.getMaxDisplayRefreshHz());
                 widgetPropertiesChanged();
                 ui.setChanged();
                 repaint();
@@ -107,6 +109,7 @@ public abstract class WidgetUI extends FastCustomDrawableComponent {
         container = new WidgetUIContainer(parent, this, model);
         this.parent = parent;
         updateBorder();
+        setMaxRefreshRate(model.getMaxDisplayRefreshHz());
         init(this);
     }
 
@@ -24,14 +24,19 @@ package org.finroc.tools.gui.commons;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EventListener;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.finroc.tools.gui.WidgetPorts;
 import org.finroc.tools.gui.WidgetPortsListener;
@@ -52,94 +57,266 @@ import org.finroc.core.port.PortListener;
  *
  * And since everything is stored in one place, more advanced stuff can be done, too :-)
  *
- * Note: Only WeakHashMaps are used in this class, to prevent memory leaks.
+ * Note: Observables and observers are only referenced weakly, to prevent memory leaks.
  * Furthermore objects are automatically removed :-)
  *
- *
- * IMPORTANT: Only use objects as observers and observables that have a constant hash code.
- * This is usually the case, but for example not with (classes extending) Java Collection
- * classes.
+ * Observables are looked up by identity. Every observable has a copy-on-write array of
+ * listener registrations. Adding and removing listeners is synchronized - firing events
+ * is lock-free and does not allocate any objects (this is the hot path: every port
+ * update from every network thread passes through here).
+ * Registrations of garbage-collected objects are cleaned up whenever listeners are added
+ * or removed.
  */
 @SuppressWarnings("rawtypes")
 public class EventRouter implements PortListener, ConnectionListener {
 
-    /** Map for storing connections: Observable, listener, Listener type */
-    private static Map < Object, Map < EventListener, List < Class <? extends EventListener >>> > listeners = new WeakHashMap < Object, Map < EventListener, List < Class <? extends EventListener >>> > ();
+    /** Initial size of observable table (must be power of two) */
+    private static final int INITIAL_TABLE_SIZE = 256;
+
+    /** Empty registration array */
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    /** Hash table for storing connections: Observable -> registrations (listener, listener type) */
+    private static volatile AtomicReferenceArray<ObservableEntry> table = new AtomicReferenceArray<ObservableEntry>(INITIAL_TABLE_SIZE);
+
+    /** Number of entries in table */
+    private static int entryCount;
+
+    /** Queue with references to garbage-collected observables and observers */
+    private static final ReferenceQueue<Object> collectedQueue = new ReferenceQueue<Object>();
+
+    /** Cache for ordinary add***Listener methods: Observable class -> (method name -> method) */
+    private static final ClassValue<ConcurrentHashMap<String, AddMethod>> addMethodCache = new ClassValue<ConcurrentHashMap<String, AddMethod>>() {
+        @Override
+        protected ConcurrentHashMap<String, AddMethod> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<String, AddMethod>();
+        }
+    };
 
-    /** Cache for ordinary add***Listener methods */
-    private static Map<String, Method> methodCache;
+    /** Type of method handles in addMethodCache */
+    private static final MethodType ADD_METHOD_TYPE = MethodType.methodType(void.class, Object.class, EventListener.class);
 
     /** singleton instance */
-    private static EventRouter instance;
+    private static final EventRouter instance = new EventRouter();
 
     public static EventRouter getInstance() {
-        if (instance == null) {
-            instance = new EventRouter();
-        }
         return instance;
     }
 
+    /**
+     * Entry in observable hash table
+     * (weak reference to observable; the bucket chain may be traversed without locking)
+     */
+    private static class ObservableEntry extends WeakReference<Object> {
+
+        /** Identity hash code of observable */
+        private final int hash;
+
+        /** Next entry in bucket */
+        private volatile ObservableEntry next;
+
+        /** Registered listeners */
+        private final RegistrationList registrations;
+
+        private ObservableEntry(Object observable, int hash, ObservableEntry next, RegistrationList registrations) {
+            super(observable, collectedQueue);
+            this.hash = hash;
+            this.next = next;
+            this.registrations = registrations;
+        }
+    }
+
+    /**
+     * Copy-on-write list of registrations of one observable
+     * (shared by entry copies created when table is resized)
+     */
+    private static class RegistrationList {
+
+        /** Current registrations - array is never modified after it has been published */
+        private volatile Registration[] array = NO_REGISTRATIONS;
+    }
+
+    /**
+     * Cached add***Listener method
+     */
+    private static class AddMethod {
+
+        /** Method handle (type: ADD_METHOD_TYPE) */
+        private final MethodHandle handle;
+
+        /** Listener type that method accepts */
+        private final Class <? extends EventListener > listenerType;
+
+        @SuppressWarnings("unchecked")
+        private AddMethod(Method method) throws IllegalAccessException {
+            MethodHandle h;
+            try {
+                h = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException e) { // e.g. public method in non-public class
+                method.setAccessible(true);
+                h = MethodHandles.lookup().unreflect(method);
+            }
+            handle = h.asType(ADD_METHOD_TYPE);
+            listenerType = (Class <? extends EventListener >)method.getParameterTypes()[0];
+        }
+    }
+
+    /**
+     * Single registration: weak reference to listener with listener type
+     */
+    private static class Registration extends WeakReference<EventListener> {
+
+        /** Listener type */
+        private final Class <? extends EventListener > type;
+
+        /** List that this registration is part of */
+        private final RegistrationList owner;
+
+        private Registration(EventListener observer, Class <? extends EventListener > type, RegistrationList owner) {
+            super(observer, collectedQueue);
+            this.type = type;
+            this.owner = owner;
+        }
+    }
+
     public synchronized static void addListener(Object observable, EventListener observer, Class <? extends EventListener > type) {
         if (observable == null || observer == null || type == null) {
             return;
         }
+        expungeCollected();
 
-        List < Class <? extends EventListener >> list = getListenerTypes(observable, observer);
+        RegistrationList list = getRegistrationList(observable, true);
+        Registration[] current = list.array;
+        for (Registration r : current) {
+            if (r.type == type && r.get() == observer) {
+                return;
+            }
+        }
 
         // add listener
-        if (!list.contains(type)) {
-            list.add(type);
-        }
+        Registration[] newArray = new Registration[current.length + 1];
+        System.arraycopy(current, 0, newArray, 0, current.length);
+        newArray[current.length] = new Registration(observer, type, list);
+        list.array = newArray;
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized static void addListener(Object observable, String addMethodName, EventListener observer) {
+    /**
+     * Registers router as listener at observable (using observable's add***Listener method)
+     * and adds observer as listener.
+     *
+     * @param observable Observable
+     * @param addMethodName Name of observable's method to add listener with (e.g. "addPortListenerRaw")
+     * @param observer Listener
+     */
+    public static void addListener(Object observable, String addMethodName, EventListener observer) {
         if (observable == null || observer == null || addMethodName == null) {
             return;
         }
-        assert(addMethodName.startsWith("add") && (addMethodName.endsWith("Listener") || addMethodName.endsWith("ListenerRaw")));
-        String key = observable.getClass().getName() + "." + addMethodName;
+        AddMethod addMethod = registerRouter(observable, addMethodName);
+        addListener(observable, observer, addMethod.listenerType);
+    }
 
-        // make sure cache has been initialized
-        if (methodCache == null) {
-            methodCache = new WeakHashMap<String, Method>();
+    /**
+     * Registers router as listener at all observables (using observables' add***Listener method)
+     * and adds observer as listener to all of them - acquiring lock only once.
+     *
+     * @param observables Observables (null entries are ignored)
+     * @param addMethodName Name of observables' method to add listener with (e.g. "addPortListenerRaw")
+     * @param observer Listener
+     */
+    public static void addListeners(Collection<?> observables, String addMethodName, EventListener observer) {
+        if (observables == null || observer == null || addMethodName == null || observables.isEmpty()) {
+            return;
         }
+        Object[] observableArray = new Object[observables.size()];
+        Class<?>[] types = new Class<?>[observableArray.length];
+        int count = 0;
+        for (Object observable : observables) {
+            if (observable != null) {
+                observableArray[count] = observable;
+                types[count] = registerRouter(observable, addMethodName).listenerType;
+                count++;
+            }
+        }
+        addListeners(observableArray, types, count, observer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized static void addListeners(Object[] observables, Class<?>[] types, int count, EventListener observer) {
+        for (int i = 0; i < count; i++) {
+            addListener(observables[i], observer, (Class <? extends EventListener >)types[i]);
+        }
+    }
+
+    /**
+     * Registers router as listener at observable
+     *
+     * @param observable Observable
+     * @param addMethodName Name of observable's method to add listener with
+     * @return Add method that was used
+     */
+    private static AddMethod registerRouter(Object observable, String addMethodName) {
+        assert(addMethodName.startsWith("add") && (addMethodName.endsWith("Listener") || addMethodName.endsWith("ListenerRaw")));
 
-        // get addMethod-Object (hopefully from cache)
-        Method addMethod = methodCache.get(key);
+        // get add method (hopefully from cache)
+        ConcurrentHashMap<String, AddMethod> classCache = addMethodCache.get(observable.getClass());
+        AddMethod addMethod = classCache.get(addMethodName);
         if (addMethod == null) {
             for (Method m : observable.getClass().getMethods()) {
-                if (m.getName() == addMethodName) {
-                    addMethod = m;
+                if (m.getName().equals(addMethodName) && m.getParameterTypes().length == 1 && EventListener.class.isAssignableFrom(m.getParameterTypes()[0])) {
+                    try {
+                        addMethod = new AddMethod(m);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
                     break;
                 }
             }
             if (addMethod == null) {
                 throw new RuntimeException(addMethodName + " not found in class " + observable.getClass());
             }
-            methodCache.put(key, addMethod);
+            classCache.put(addMethodName, addMethod);
         }
 
         // register Router as listener
         try {
-            addMethod.invoke(observable, getInstance());
-        } catch (Exception e) {
+            addMethod.handle.invokeExact(observable, (EventListener)getInstance());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
-
-        addListener(observable, observer, (Class <? extends EventListener >)addMethod.getParameterTypes()[0]);
+        return addMethod;
     }
 
     public synchronized static void removeListener(Object observable, EventListener observer, Class <? extends EventListener > type) {
         if (observable != null && observer != null && type != null) {
-            getListenerTypes(observable, observer).remove(type);
+            expungeCollected();
+            RegistrationList list = getRegistrationList(observable, false);
+            if (list != null) {
+                for (Registration r : list.array) {
+                    if (r.type == type && r.get() == observer) {
+                        removeRegistration(r);
+                        return;
+                    }
+                }
+            }
         }
     }
 
     public synchronized static void objectDisposed(Object o) {
+        expungeCollected();
 
         // remove listeners
-        listeners.remove(o);
+        if (o != null) {
+            int hash = System.identityHashCode(o);
+            for (ObservableEntry e = table.get(indexFor(hash, table.length())); e != null; e = e.next) {
+                if (e.get() == o) {
+                    removeEntry(e);
+                    break;
+                }
+            }
+        }
 
         // remove as listener
         if (o instanceof EventListener) {
@@ -148,58 +325,181 @@ public class EventRouter implements PortListener, ConnectionListener {
     }
 
     public synchronized static void removeAsListener(EventListener observer) {
-        for (Entry < Object, Map < EventListener, List < Class <? extends EventListener >>> > entry : listeners.entrySet()) {
-            entry.getValue().remove(observer);
+        AtomicReferenceArray<ObservableEntry> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            for (ObservableEntry e = tab.get(i); e != null; e = e.next) {
+                for (Registration r : e.registrations.array) {
+                    if (r.get() == observer) {
+                        removeRegistration(r);
+                    }
+                }
+            }
         }
     }
 
-    private synchronized static List < Class <? extends EventListener >> getListenerTypes(Object observable, EventListener observer) {
-        // make sure 'listeners' has been initialized
-        /*if (listeners == null) {
-            listeners =
-        }*/
-        Map < EventListener, List < Class <? extends EventListener >>> mapOfObj = listeners.get(observable);
-        if (mapOfObj == null) {
-            mapOfObj = new WeakHashMap < EventListener, List < Class <? extends EventListener >>> ();
-            listeners.put(observable, mapOfObj);
+    /**
+     * Lock-free lookup of an observable's registrations
+     *
+     * @param observable Observable
+     * @return Current registrations (possibly containing registrations of other types or collected listeners - never null)
+     */
+    private static Registration[] getRegistrations(Object observable) {
+        if (observable == null) {
+            return NO_REGISTRATIONS;
+        }
+        int hash = System.identityHashCode(observable);
+        AtomicReferenceArray<ObservableEntry> tab = table;
+        for (ObservableEntry e = tab.get(indexFor(hash, tab.length())); e != null; e = e.next) {
+            if (e.hash == hash && e.get() == observable) {
+                return e.registrations.array;
+            }
+        }
+        return NO_REGISTRATIONS;
+    }
+
+    /**
+     * (must be called with lock held)
+     *
+     * @param observable Observable
+     * @param create Create list if it does not exist yet?
+     * @return Registration list of observable (null if it does not exist and create is false)
+     */
+    private static RegistrationList getRegistrationList(Object observable, boolean create) {
+        int hash = System.identityHashCode(observable);
+        AtomicReferenceArray<ObservableEntry> tab = table;
+        int index = indexFor(hash, tab.length());
+        ObservableEntry head = tab.get(index);
+        for (ObservableEntry e = head; e != null; e = e.next) {
+            if (e.hash == hash && e.get() == observable) {
+                return e.registrations;
+            }
+        }
+        if (!create) {
+            return null;
         }
-        List < Class <? extends EventListener >> list = mapOfObj.get(observer);
-        if (list == null) {
-            list = new ArrayList < Class <? extends EventListener >> ();
-            mapOfObj.put(observer, list);
+
+        RegistrationList list = new RegistrationList();
+        tab.set(index, new ObservableEntry(observable, hash, head, list));
+        entryCount++;
+        if (entryCount > tab.length() * 3 / 4) {
+            resize();
         }
         return list;
     }
 
+    /**
+     * Doubles table size (must be called with lock held)
+     * Copies of all entries are created, so that concurrent readers of the old table are not affected.
+     */
+    private static void resize() {
+        AtomicReferenceArray<ObservableEntry> oldTable = table;
+        AtomicReferenceArray<ObservableEntry> newTable = new AtomicReferenceArray<ObservableEntry>(oldTable.length() * 2);
+        int count = 0;
+        for (int i = 0; i < oldTable.length(); i++) {
+            for (ObservableEntry e = oldTable.get(i); e != null; e = e.next) {
+                Object observable = e.get();
+                if (observable != null) {
+                    int index = indexFor(e.hash, newTable.length());
+                    newTable.set(index, new ObservableEntry(observable, e.hash, newTable.get(index), e.registrations));
+                    count++;
+                }
+            }
+        }
+        entryCount = count;
+        table = newTable;
+    }
+
+    /**
+     * Removes entry from table (must be called with lock held)
+     * The removed entry keeps its successor, so that concurrent readers can continue traversing the chain.
+     *
+     * @param entry Entry to remove (nothing happens if it is not part of current table)
+     */
+    private static void removeEntry(ObservableEntry entry) {
+        AtomicReferenceArray<ObservableEntry> tab = table;
+        int index = indexFor(entry.hash, tab.length());
+        ObservableEntry prev = null;
+        for (ObservableEntry e = tab.get(index); e != null; e = e.next) {
+            if (e == entry) {
+                if (prev == null) {
+                    tab.set(index, e.next);
+                } else {
+                    prev.next = e.next;
+                }
+                entryCount--;
+                return;
+            }
+            prev = e;
+        }
+    }
+
+    /**
+     * Removes registration from its list (must be called with lock held)
+     *
+     * @param registration Registration to remove
+     */
+    private static void removeRegistration(Registration registration) {
+        RegistrationList list = registration.owner;
+        Registration[] current = list.array;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == registration) {
+                Registration[] newArray = new Registration[current.length - 1];
+                System.arraycopy(current, 0, newArray, 0, i);
+                System.arraycopy(current, i + 1, newArray, i, current.length - i - 1);
+                list.array = newArray;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes entries and registrations of garbage-collected objects (must be called with lock held)
+     */
+    private static void expungeCollected() {
+        Reference<?> ref;
+        while ((ref = collectedQueue.poll()) != null) {
+            if (ref instanceof ObservableEntry) {
+                removeEntry((ObservableEntry)ref);
+            } else {
+                removeRegistration((Registration)ref);
+            }
+        }
+    }
+
+    /**
+     * @param hash Identity hash code
+     * @param length Table length (power of two)
+     * @return Bucket index
+     */
+    private static int indexFor(int hash, int length) {
+        hash ^= (hash >>> 16);
+        return hash & (length - 1);
+    }
 
     @SuppressWarnings("unchecked")
-    public synchronized static <T extends EventListener> Collection<T> getListeners(Object caller, Class<T> listenerType) {
+    public static <T extends EventListener> Collection<T> getListeners(Object caller, Class<T> listenerType) {
         List<T> result = new ArrayList<T>();
-        try {
-            for (Entry < EventListener, List < Class <? extends EventListener >>> entry : listeners.get(caller).entrySet()) {
-                if (entry.getValue().contains(listenerType)) {
-                    result.add((T)entry.getKey());
-                }
+        for (Registration r : getRegistrations(caller)) {
+            EventListener l = r.get();
+            if (r.type == listenerType && l != null) {
+                result.add((T)l);
             }
-        } catch (Exception e) {}
+        }
         return result;
     }
 
     public synchronized static void removeListeners(Object observable, Class <? extends EventListener > listenerType) {
-
-        for (Entry < EventListener, List < Class <? extends EventListener >>> entry : listeners.get(observable).entrySet()) {
-            try {
-                entry.getValue().remove(listenerType);
-            } catch (Exception e) {}
+        expungeCollected();
+        for (Registration r : getRegistrations(observable)) {
+            if (r.type == listenerType) {
+                removeRegistration(r);
+            }
         }
     }
 
-    public synchronized static boolean hasListeners(Object observable, Class <? extends EventListener > listenerType) {
-        if (!listeners.containsKey(observable)) {
-            return false;
-        }
-        for (Entry < EventListener, List < Class <? extends EventListener >>> entry : listeners.get(observable).entrySet()) {
-            if (entry.getValue().contains(listenerType)) {
+    public static boolean hasListeners(Object observable, Class <? extends EventListener > listenerType) {
+        for (Registration r : getRegistrations(observable)) {
+            if (r.type == listenerType && r.get() != null) {
                 return true;
             }
         }
@@ -218,21 +518,35 @@ public class EventRouter implements PortListener, ConnectionListener {
     }
 
     public static void fireConnectionEvent(ExternalConnection source, int e) {
-        for (ConnectionListener el : getListeners(source, ConnectionListener.class)) {
-            el.connectionEvent(source, e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == ConnectionListener.class && l != null) {
+                ((ConnectionListener)l).connectionEvent(source, e);
+            }
         }
     }
 
     @SuppressWarnings("unchecked")
     public static void fireChangeEvent(AbstractPort source, Object value) {
-        for (PortListener el : getListeners(source, PortListener.class)) {
-            el.portChanged(source, value);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == PortListener.class && l != null) {
+                ((PortListener)l).portChanged(source, value);
+            }
         }
     }
 
-    public static void fireChangeEvent(WidgetPorts wi, AbstractPort source, Object value) {
-        for (WidgetPortsListener el : getListeners(wi, WidgetPortsListener.class)) {
-            el.portChanged(wi, source, value);
+    public static void fireChangeEvent(WidgetPorts wi, int index, AbstractPort source, Object value) {
+        for (Registration r : getRegistrations(wi)) {
+            EventListener l = r.get();
+            if (l == null) {
+                continue;
+            }
+            if (r.type == WidgetPortsListener.class) {
+                ((WidgetPortsListener)l).portChanged(wi, source, value);
+            } else if (r.type == WidgetPortsListener.Indexed.class) {
+                ((WidgetPortsListener.Indexed)l).portChanged(wi, index, source, value);
+            }
         }
     }
 
@@ -250,38 +564,59 @@ public class EventRouter implements PortListener, ConnectionListener {
 //  }
 
     public static void fireMouseClickedEvent(Object source, MouseEvent e) {
-        for (MouseListener ml : getListeners(source, MouseListener.class)) {
-            ml.mouseClicked(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseListener.class && l != null) {
+                ((MouseListener)l).mouseClicked(e);
+            }
         }
     }
     public static void fireMouseEnteredEvent(Object source, MouseEvent e) {
-        for (MouseListener ml : getListeners(source, MouseListener.class)) {
-            ml.mouseEntered(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseListener.class && l != null) {
+                ((MouseListener)l).mouseEntered(e);
+            }
         }
     }
     public static void fireMouseExitedEvent(Object source, MouseEvent e) {
-        for (MouseListener ml : getListeners(source, MouseListener.class)) {
-            ml.mouseExited(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseListener.class && l != null) {
+                ((MouseListener)l).mouseExited(e);
+            }
         }
     }
     public static void fireMousePressedEvent(Object source, MouseEvent e) {
-        for (MouseListener ml : getListeners(source, MouseListener.class)) {
-            ml.mousePressed(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseListener.class && l != null) {
+                ((MouseListener)l).mousePressed(e);
+            }
         }
     }
     public static void fireMouseReleasedEvent(Object source, MouseEvent e) {
-        for (MouseListener ml : getListeners(source, MouseListener.class)) {
-            ml.mouseReleased(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseListener.class && l != null) {
+                ((MouseListener)l).mouseReleased(e);
+            }
         }
     }
     public static void fireMouseDraggedEvent(Object source, MouseEvent e) {
-        for (MouseMotionListener ml : getListeners(source, MouseMotionListener.class)) {
-            ml.mouseDragged(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseMotionListener.class && l != null) {
+                ((MouseMotionListener)l).mouseDragged(e);
+            }
         }
     }
     public static void fireMouseMovedEvent(Object source, MouseEvent e) {
-        for (MouseMotionListener ml : getListeners(source, MouseMotionListener.class)) {
-            ml.mouseMoved(e);
+        for (Registration r : getRegistrations(source)) {
+            EventListener l = r.get();
+            if (r.type == MouseMotionListener.class && l != null) {
+                ((MouseMotionListener)l).mouseMoved(e);
+            }
         }
     }
 }
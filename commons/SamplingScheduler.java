@@ -0,0 +1,85 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.finroc.core.port.ThreadLocalCache;
+import org.rrlib.logging.Log;
+import org.rrlib.logging.LogLevel;
+
+/**
+ * Shared scheduler for periodic sampling tasks of widgets (e.g. oscilloscopes).
+ *
+ * All tasks are executed by a single daemon thread - so the number of threads
+ * does not grow with the number of widgets.
+ * Ticks are aligned to multiples of the task period (in system time),
+ * so tasks with the same period are executed in the same wakeup.
+ */
+public class SamplingScheduler {
+
+    /** Executor that runs all sampling tasks */
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread("Widget Sampling Thread") {
+                @Override
+                public void run() {
+                    ThreadLocalCache.get();
+                    r.run();
+                }
+            };
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Schedules periodic task
+     *
+     * @param task Task to execute
+     * @param periodInMs Period in ms
+     * @return Handle to cancel task (e.g. when widget is disposed)
+     */
+    public static ScheduledFuture<?> schedule(final Runnable task, long periodInMs) {
+        periodInMs = Math.max(1, periodInMs);
+        long initialDelay = periodInMs - (System.currentTimeMillis() % periodInMs);
+        return executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    // exceptions would cancel any further executions
+                    Log.log(LogLevel.DEBUG_WARNING, task, e);
+                }
+            }
+        }, initialDelay, periodInMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,144 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons.fastdraw;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool of reusable byte and int buffers - e.g. for compressed and decoded image data.
+ *
+ * Buffers are grouped in size classes (powers of two).
+ * Requesting a byte buffer returns a buffer of the smallest sufficient size class -
+ * so frames of similar size (e.g. from a video stream) reuse the same buffers
+ * instead of producing garbage.
+ * Int buffers (pixel data) are only reused if they have exactly the requested size -
+ * as code often relies on their length being the number of pixels.
+ * Buffers returned by the pool are not cleared.
+ *
+ * All methods are thread-safe.
+ */
+public class BufferPool {
+
+    /** Smallest size class (in elements) */
+    private static final int MIN_SIZE_CLASS = 12;
+
+    /** Largest size class (in elements) - larger buffers are not pooled */
+    private static final int MAX_SIZE_CLASS = 26;
+
+    /** Maximum number of unused buffers kept per size class */
+    private static final int MAX_BUFFERS_PER_CLASS = 4;
+
+    /** Unused buffers for each size class */
+    private static final ArrayDeque<byte[]>[] byteBuffers = createPools();
+    private static final ArrayDeque<int[]>[] intBuffers = createPools();
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArrayDeque<T>[] createPools() {
+        ArrayDeque<T>[] result = new ArrayDeque[MAX_SIZE_CLASS + 1];
+        for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++) {
+            result[i] = new ArrayDeque<T>(MAX_BUFFERS_PER_CLASS);
+        }
+        return result;
+    }
+
+    /**
+     * @param size Required number of elements
+     * @return Size class for buffer with this number of elements (-1 if buffer is too large to be pooled)
+     */
+    private static int getSizeClass(int size) {
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(size - 1));
+        return sizeClass <= MAX_SIZE_CLASS ? sizeClass : -1;
+    }
+
+    /**
+     * @param minSize Minimum size of buffer
+     * @return Buffer with at least the specified size (possibly with old content)
+     */
+    public static byte[] getByteBuffer(int minSize) {
+        int sizeClass = getSizeClass(minSize);
+        if (sizeClass < 0) {
+            return new byte[minSize];
+        }
+        byte[] result;
+        synchronized (byteBuffers) {
+            result = byteBuffers[sizeClass].pollFirst();
+        }
+        return result != null ? result : new byte[1 << sizeClass];
+    }
+
+    /**
+     * Returns buffer to pool. It must not be accessed anymore after calling this.
+     *
+     * @param buffer Buffer obtained via getByteBuffer()
+     */
+    public static void release(byte[] buffer) {
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass < 0 || buffer.length != (1 << sizeClass)) {
+            return;
+        }
+        synchronized (byteBuffers) {
+            if (byteBuffers[sizeClass].size() < MAX_BUFFERS_PER_CLASS) {
+                byteBuffers[sizeClass].addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * @param size Size of buffer
+     * @return Buffer with exactly the specified size (possibly with old content)
+     */
+    public static int[] getIntBuffer(int size) {
+        int sizeClass = getSizeClass(size);
+        if (sizeClass >= 0) {
+            synchronized (intBuffers) {
+                for (Iterator<int[]> it = intBuffers[sizeClass].iterator(); it.hasNext();) {
+                    int[] buffer = it.next();
+                    if (buffer.length == size) {
+                        it.remove();
+                        return buffer;
+                    }
+                }
+            }
+        }
+        return new int[size];
+    }
+
+    /**
+     * Returns buffer to pool. It must not be accessed anymore after calling this.
+     *
+     * @param buffer Buffer obtained via getIntBuffer()
+     */
+    public static void release(int[] buffer) {
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass < 0) {
+            return;
+        }
+        synchronized (intBuffers) {
+            ArrayDeque<int[]> pool = intBuffers[sizeClass];
+            if (pool.size() == MAX_BUFFERS_PER_CLASS) {
+                pool.pollLast(); // keep buffers of most recently used sizes
+            }
+            pool.addFirst(buffer);
+        }
+    }
+}
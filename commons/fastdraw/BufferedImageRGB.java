@@ -28,6 +28,10 @@ import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.util.Arrays;
 
 import javax.swing.Icon;
@@ -49,6 +53,12 @@ public class BufferedImageRGB extends FastBufferedImage implements Icon, Blittab
 
     public final static DataType<BufferedImageRGB> TYPE = new DataType<BufferedImageRGB>(BufferedImageRGB.class);
 
+    /** Color model of TYPE_INT_RGB images - used for wrapping reused buffers */
+    private final static DirectColorModel RGB_COLOR_MODEL = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+
+    /** Was current buffer obtained from BufferPool? (only then it is returned to the pool on resize) */
+    private boolean pooledBuffer;
+
     public BufferedImageRGB() {
         this(8, 8);
     }
@@ -73,6 +83,24 @@ public class BufferedImageRGB extends FastBufferedImage implements Icon, Blittab
         }
     }
 
+    /**
+     * Copies area from other image with the same width
+     *
+     * @param source Image to copy from
+     * @param area Area to copy (null = whole image)
+     */
+    public void copyFrom(BufferedImageRGB source, Rectangle area) {
+        if (area == null) {
+            System.arraycopy(source.getBuffer(), 0, getBuffer(), 0, Math.min(source.getWidth() * source.getHeight(), getWidth() * getHeight()));
+            return;
+        }
+        int pos = area.y * getWidth() + area.x;
+        for (int y = 0; y < area.height; y++) {
+            System.arraycopy(source.getBuffer(), pos, getBuffer(), pos, area.width);
+            pos += getWidth();
+        }
+    }
+
     public void mirrorLeftRight() {
         int[] buffer = getBuffer();
         int[] bufferTemp = new int[getWidth()];
@@ -188,9 +216,7 @@ public class BufferedImageRGB extends FastBufferedImage implements Icon, Blittab
     public void deserialize(BinaryInputStream stream) throws Exception {
         int width = stream.readInt();
         int height = stream.readInt();
-        if (width != getWidth() || height != getHeight()) {
-            wrapped = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        }
+        resize(width, height);
         int[] raster = getBuffer();
         for (int i = 0, n = getWidth() * getHeight(); i < n; i++) {
             raster[i] = stream.readInt();
@@ -198,12 +224,39 @@ public class BufferedImageRGB extends FastBufferedImage implements Icon, Blittab
     }
 
     /**
+     * Resizes image. Image content is undefined afterwards.
+     *
+     * If the current buffer has exactly the required size (e.g. width and height are swapped), it is reused.
+     * Otherwise, a buffer with exactly the required size is obtained from BufferPool - and the old one is returned to the pool.
+     * Therefore, buffers obtained via getBuffer() before calling this must not be accessed anymore.
+     *
      * @param width New Width
      * @param height New Height
      */
     public void resize(int width, int height) {
-        if (width != wrapped.getWidth() || height != wrapped.getHeight()) {
-            wrapped = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        if (width == wrapped.getWidth() && height == wrapped.getHeight()) {
+            return;
+        }
+        int[] buffer = getBuffer();
+        if (buffer.length != width * height) {
+            if (pooledBuffer) {
+                BufferPool.release(buffer);
+            }
+            buffer = BufferPool.getIntBuffer(width * height);
+            pooledBuffer = true;
         }
+        wrapped = wrapBuffer(buffer, width, height);
+    }
+
+    /**
+     * @param buffer Buffer to wrap (with exactly width * height elements)
+     * @param width Image width
+     * @param height Image height
+     * @return BufferedImage of type TYPE_INT_RGB that uses the specified buffer
+     */
+    private static BufferedImage wrapBuffer(int[] buffer, int width, int height) {
+        DataBufferInt dataBuffer = new DataBufferInt(buffer, width * height);
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width, RGB_COLOR_MODEL.getMasks(), null);
+        return new BufferedImage(RGB_COLOR_MODEL, raster, false, null);
     }
 }
@@ -22,14 +22,11 @@
 package org.finroc.tools.gui.commons.fastdraw;
 
 import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
-
 import org.finroc.plugins.data_types.Blittable;
 import org.finroc.plugins.data_types.HasBlittable;
 import org.rrlib.serialization.BinaryInputStream;
@@ -47,9 +44,14 @@ public class CompressedImage extends Blittable implements HasBlittable, StringSe
     private byte[] compressedData;
     private int dataSize;
 
+    /** Was compressedData obtained from BufferPool? (only then it is returned to the pool when it is too small) */
+    private transient boolean pooledData;
+
     public final static DataType<CompressedImage> TYPE = new DataType<CompressedImage>(CompressedImage.class);
 
-    private transient BufferedImage uncompressedImage;
+    /** Decoded image (recycled - only valid if uncompressed is set) */
+    private transient BufferedImageRGB uncompressedImage;
+    private transient boolean uncompressed;
 
     /** UID */
     private static final long serialVersionUID = 854673830566034823L;
@@ -60,6 +62,7 @@ public class CompressedImage extends Blittable implements HasBlittable, StringSe
 
     public CompressedImage(byte[] data) {
         compressedData = data;
+        dataSize = data.length;
     }
 
     @Override
@@ -81,7 +84,16 @@ public class CompressedImage extends Blittable implements HasBlittable, StringSe
     @Override
     public void blitTo(Destination destination, Point dest, Rectangle sourceArea) {
         checkUncompressed();
-        destination.getBufferedImage().createGraphics().drawImage(uncompressedImage, dest.x, dest.y, sourceArea.width, sourceArea.height, Color.black, null);
+        if (uncompressedImage == null) {
+            return;
+        }
+        if (sourceArea.x == 0 && sourceArea.y == 0 && sourceArea.width == uncompressedImage.getWidth() && sourceArea.height == uncompressedImage.getHeight()) {
+            uncompressedImage.blitTo(destination, dest, sourceArea); // copy decoded pixels
+        } else {
+            Graphics g = destination.getBufferedImage().createGraphics();
+            g.drawImage(uncompressedImage.getBufferedImage(), dest.x, dest.y, sourceArea.width, sourceArea.height, Color.black, null);
+            g.dispose();
+        }
     }
 
     protected int toInt(byte r, byte g, byte b) {
@@ -101,21 +113,40 @@ public class CompressedImage extends Blittable implements HasBlittable, StringSe
     }
 
     private void checkUncompressed() {
-        if (uncompressedImage == null) {
+        if (!uncompressed) {
             try {
-                uncompressedImage = ImageIO.read(new ByteArrayInputStream(compressedData));
+                uncompressedImage = CompressedImageDecoder.decode(compressedData, dataSize, uncompressedImage);
+                uncompressed = true;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * @return Buffer with compressed image data (only the first getCompressedDataSize() bytes are valid)
+     */
+    public byte[] getCompressedData() {
+        return compressedData;
+    }
+
+    /**
+     * @return Size of compressed image data in bytes
+     */
+    public int getCompressedDataSize() {
+        return dataSize;
+    }
+
     @Override
     public void deserialize(BinaryInputStream is) {
-        uncompressedImage = null;
+        uncompressed = false;
         int size = is.readInt();
         if (compressedData.length < size) {
-            compressedData = new byte[size * 2]; // keep some bytes for reserve...
+            if (pooledData) {
+                BufferPool.release(compressedData);
+            }
+            compressedData = BufferPool.getByteBuffer(size); // size class keeps some bytes for reserve...
+            pooledData = true;
         }
         dataSize = size;
         is.readFully(compressedData, 0, dataSize);
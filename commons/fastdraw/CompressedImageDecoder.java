@@ -0,0 +1,310 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons.fastdraw;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+import org.rrlib.logging.Log;
+import org.rrlib.logging.LogLevel;
+
+/**
+ * Decodes a stream of compressed images (e.g. from an MJPEG camera) in background.
+ *
+ * Frames are decoded as they arrive by a bounded pool of worker threads that is shared by all decoders.
+ * If a frame arrives before decoding of the previous one has started, the previous one is dropped (latest frame wins).
+ * Frames are decoded into a few recycled images - so the render path only needs to copy decoded pixels.
+ *
+ * Decoded frames may be acquired by a single consumer (e.g. a widget).
+ * If the consumer displays frames downscaled, it may set a target size - so that frames are decoded with reduced resolution.
+ */
+public class CompressedImageDecoder {
+
+    /** Number of recycled images (decoding, latest, in use by consumer) */
+    private static final int FRAME_BUFFERS = 3;
+
+    /** Pool with decoding threads (shared by all decoders) */
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Image Decode Thread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Compressed data of next frame to decode */
+    private byte[] pendingData = new byte[0];
+    private int pendingSize;
+    private boolean framePending;
+
+    /** Compressed data of frame currently decoded */
+    private byte[] decodingData = new byte[0];
+
+    /** Is a decoding task scheduled for this decoder? (there is never more than one) */
+    private boolean decodingScheduled;
+
+    /** Recycled images to decode frames to */
+    private final BufferedImageRGB[] frames = new BufferedImageRGB[FRAME_BUFFERS];
+
+    /** Index of latest decoded frame and of frame in use by consumer (-1 = none) */
+    private int latestFrame = -1, frameInUse = -1;
+
+    /** Frames are decoded with reduced resolution that is at least this size (null = full resolution) */
+    private Dimension targetSize;
+
+    /** Number of frames that were dropped without decoding */
+    private volatile long droppedFrames;
+
+    /** Called whenever a new frame has been decoded (by decoding thread) */
+    private final Runnable listener;
+
+    /** Task that decodes pending frames */
+    private final Runnable decodingTask = new Runnable() {
+        @Override
+        public void run() {
+            decodePendingFrames();
+        }
+    };
+
+    /**
+     * @param listener Called whenever a new frame has been decoded (by decoding thread - e.g. to schedule a repaint)
+     */
+    public CompressedImageDecoder(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Enqueues frame for decoding. Compressed data is copied - so image may be reused after call.
+     * May be called from any thread.
+     *
+     * @param image Compressed image
+     */
+    public void offer(CompressedImage image) {
+        synchronized (this) {
+            if (framePending) {
+                droppedFrames++;
+            }
+            int size = image.getCompressedDataSize();
+            if (pendingData.length < size) {
+                BufferPool.release(pendingData);
+                pendingData = BufferPool.getByteBuffer(size);
+            }
+            System.arraycopy(image.getCompressedData(), 0, pendingData, 0, size);
+            pendingSize = size;
+            framePending = true;
+            if (decodingScheduled) {
+                return;
+            }
+            decodingScheduled = true;
+        }
+        executor.execute(decodingTask);
+    }
+
+    /**
+     * Decodes pending frames until there are no more (called by decoding thread)
+     */
+    private void decodePendingFrames() {
+        while (true) {
+            int size, target = 0;
+            Dimension targetSize;
+            synchronized (this) {
+                if (!framePending) {
+                    decodingScheduled = false;
+                    return;
+                }
+                byte[] temp = decodingData;
+                decodingData = pendingData;
+                pendingData = temp;
+                size = pendingSize;
+                targetSize = this.targetSize;
+                framePending = false;
+                while (target == latestFrame || target == frameInUse) {
+                    target++;
+                }
+            }
+
+            try {
+                BufferedImageRGB decoded = decode(decodingData, size, frames[target], targetSize);
+                synchronized (this) {
+                    frames[target] = decoded;
+                    latestFrame = target;
+                }
+                listener.run();
+            } catch (Exception e) {
+                Log.log(LogLevel.DEBUG_WARNING, this, e);
+            }
+        }
+    }
+
+    /**
+     * Acquires latest decoded frame. It must be released via release() after use.
+     *
+     * @return Latest decoded frame (null if no frame has been decoded yet)
+     */
+    public synchronized BufferedImageRGB acquireLatest() {
+        if (latestFrame < 0) {
+            return null;
+        }
+        frameInUse = latestFrame;
+        return frames[frameInUse];
+    }
+
+    /**
+     * Releases frame acquired via acquireLatest()
+     */
+    public synchronized void release() {
+        frameInUse = -1;
+    }
+
+    /**
+     * Sets size that frames are displayed with.
+     * Frames are subsampled while decoding if they are at least twice as large.
+     * Affects frames decoded after this call.
+     *
+     * @param targetSize Minimum size of decoded frames (null = decode with full resolution)
+     */
+    public synchronized void setTargetSize(Dimension targetSize) {
+        this.targetSize = targetSize == null ? null : new Dimension(targetSize);
+    }
+
+    /**
+     * @return Number of frames that were dropped without decoding - because newer frames arrived first
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * Decodes image
+     *
+     * @param data Compressed image data (e.g. JPEG or PNG)
+     * @param size Number of valid bytes in data
+     * @param reuse Image to decode to - resized if it does not have the appropriate size (may be null)
+     * @return Decoded image (reuse - or a new image if reuse was null)
+     */
+    public static BufferedImageRGB decode(byte[] data, int size, BufferedImageRGB reuse) throws IOException {
+        return decode(data, size, reuse, null);
+    }
+
+    /**
+     * Decodes image with reduced resolution.
+     * Every n-th pixel in each direction is decoded - with n chosen so that the decoded image is not smaller than targetSize.
+     *
+     * @param data Compressed image data (e.g. JPEG or PNG)
+     * @param size Number of valid bytes in data
+     * @param reuse Image to decode to - resized if it does not have the appropriate size (may be null)
+     * @param targetSize Minimum size of decoded image (null = full resolution)
+     * @return Decoded image (reuse - or a new image if reuse was null)
+     */
+    public static BufferedImageRGB decode(byte[] data, int size, BufferedImageRGB reuse, Dimension targetSize) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data, 0, size));
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unknown image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = getSubsampling(width, height, targetSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    width = (width + subsampling - 1) / subsampling;
+                    height = (height + subsampling - 1) / subsampling;
+                }
+                if (reuse == null) {
+                    reuse = new BufferedImageRGB(width, height);
+                } else {
+                    reuse.resize(width, height);
+                }
+                if (supportsImageType(reader, reuse.getBufferedImage().getType())) {
+                    param.setDestination(reuse.getBufferedImage());
+                    reader.read(0, param);
+                } else {
+
+                    // reader cannot decode to int buffer directly
+                    BufferedImage image = reader.read(0, param);
+                    Graphics g = reuse.getBufferedImage().createGraphics();
+                    g.drawImage(image, 0, 0, null);
+                    g.dispose();
+                }
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+        return reuse;
+    }
+
+    /**
+     * @param reader Image reader with input set
+     * @param imageType Type of BufferedImage (e.g. BufferedImage.TYPE_INT_RGB)
+     * @return True if reader can decode first image directly to a BufferedImage of this type
+     */
+    private static boolean supportsImageType(ImageReader reader, int imageType) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            if (types.next().getBufferedImageType() == imageType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param width Width of image
+     * @param height Height of image
+     * @param targetSize Minimum size of decoded image (null = full resolution)
+     * @return Subsampling factor to decode image with
+     */
+    private static int getSubsampling(int width, int height, Dimension targetSize) {
+        if (targetSize == null || targetSize.width <= 0 || targetSize.height <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(width / targetSize.width, height / targetSize.height));
+    }
+}
@@ -24,8 +24,11 @@ package org.finroc.tools.gui.commons.fastdraw;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Insets;
 import java.awt.Rectangle;
+import java.awt.image.VolatileImage;
 
 import javax.naming.OperationNotSupportedException;
 
@@ -50,11 +53,49 @@ public abstract class FastCustomDrawableComponent extends MPanel {
     //private static BufferedImageRGB renderModeTest = new BufferedImageRGB(10, 10);
 
     // changed ?
-    private boolean changed;
+    private volatile boolean changed;
+
+    /** Region of cache that needs to be re-rendered (null = whole cache) - only meaningful while changed is set */
+    private Rectangle dirtyRegion;
+
+    /** Minimum time between two repaints scheduled via scheduleRepaint() in ns (0 = no limit) */
+    private volatile long minRepaintInterval;
+
+    /** Time of last repaint performed by FrameScheduler (System.nanoTime()) - only accessed by event dispatch thread */
+    long lastScheduledRepaint;
 
     /** resize flag (for optimization) */
     public static boolean resizing;
 
+    /** State of background rendering (see FrameRenderer) */
+    enum BackgroundRendering { Idle, Rendering, Done }
+    private volatile BackgroundRendering backgroundRendering = BackgroundRendering.Idle;
+
+    /** May renderToCache() be called from render threads? (see setBackgroundRenderingSupported()) */
+    private volatile boolean backgroundRenderingSupported;
+
+    /** Buffer that is rendered to in background while cache is displayed */
+    private BufferedImageRGB backBuffer;
+
+    /** Region in which cache is newer than back buffer (null = whole buffer) */
+    private Rectangle backBufferOutdated;
+
+    /** Size and region (null = whole cache) to render in background */
+    private Dimension backgroundRenderSize;
+    private Rectangle backgroundRenderRegion;
+
+    /** Blit cache via accelerated surfaces? */
+    private static volatile boolean acceleratedCache = true;
+
+    /** Accelerated copy of cache (null if not allocated) - only accessed by event dispatch thread */
+    private transient VolatileImage surface;
+
+    /** Is content of surface valid? (if not, the whole cache is copied to it before the next blit) */
+    private boolean surfaceValid;
+
+    /** Region in which surface is outdated (null = none) - only meaningful if surfaceValid is set */
+    private Rectangle surfaceOutdated;
+
     protected FastCustomDrawableComponent(RenderMode renderMode) {
         this.renderMode = renderMode;
     }
@@ -82,6 +123,21 @@ public abstract class FastCustomDrawableComponent extends MPanel {
         throw new OperationNotSupportedException();
     }
 
+    /**
+     * Renders (part of) component to cache.
+     * Components that mark only parts of themselves changed (via setChanged(Rectangle))
+     * may override this to re-render only the dirty region.
+     * The default implementation renders the whole component.
+     *
+     * @param cache Cache to render to
+     * @param renderSize Size of area to render
+     * @param resized Has cache been resized (or reallocated) since last call?
+     * @param dirtyRegion Region to re-render (in cache coordinates). Pixels outside of it are still valid from the last call. Null, if the whole component needs to be rendered.
+     */
+    protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion) throws OperationNotSupportedException {
+        renderToCache(cache, renderSize, resized);
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
 
@@ -92,30 +148,48 @@ public abstract class FastCustomDrawableComponent extends MPanel {
 
             if (size.width >= 1 && size.height >= 1) {
 
-                // reinit cache?
-                boolean resized = false;
-                if ((cache == null) || !(size.equals(cache.getSize()))) {
-                    initCache();
-                    resized = true;
-                }
+                // result of background rendering available?
+                swapBuffers();
 
-                // update cache
-                if (hasChanged()) {
-                    if (renderMode == RenderMode.Cached) {
-                        try {
-                            renderToCache(cache, size, resized);
-                            changed = false;
-                        } catch (OperationNotSupportedException e) {
-                            Log.log(LogLevel.ERROR, this, e);
+                // cache must not be touched while it is rendered in background
+                if (backgroundRendering == BackgroundRendering.Idle) {
+
+                    // reinit cache?
+                    boolean resized = false;
+                    if ((cache == null) || !(size.equals(cache.getSize()))) {
+                        initCache();
+                        resized = true;
+                    }
+
+                    // update cache
+                    if (hasChanged()) {
+                        if (!resized && backgroundRenderingSupported && FrameRenderer.isEnabled()) {
+                            scheduleRepaint(); // render in background - and blit in next frame
+                        } else {
+                            Rectangle region = takeDirtyRegion();
+                            if (resized) {
+                                region = null;
+                            } else if (region != null) {
+                                region = region.intersection(new Rectangle(size));
+                            }
+                            if (region == null || !region.isEmpty()) {
+                                try {
+                                    renderToCache(cache, size, resized, region);
+                                } catch (OperationNotSupportedException e) {
+                                    Log.log(LogLevel.ERROR, this, e);
+                                }
+                                backBufferOutdated = null;
+                                invalidateSurface(region);
+                            }
                         }
                     }
                 }
 
                 // blit
-                if (!resizing) {
-                    g.drawImage(cache.getBufferedImage(), i.left, i.top, null);
-                } else {
-                    g.drawImage(cache.getBufferedImage().getSubimage(0, 0, size.width, size.height), i.left, i.top, null);
+                int width = Math.min(size.width, cache.getWidth());
+                int height = Math.min(size.height, cache.getHeight());
+                if (!blitAccelerated(g, i.left, i.top, width, height)) {
+                    g.drawImage(cache.getBufferedImage(), i.left, i.top, i.left + width, i.top + height, 0, 0, width, height, null);
                 }
             }
 
@@ -135,6 +209,103 @@ public abstract class FastCustomDrawableComponent extends MPanel {
         //FPSDetector.tick();
     }
 
+    /**
+     * Blits cache via accelerated surface.
+     * Surface is only updated, if cache has changed - or if its contents were lost.
+     *
+     * @param g Graphics to blit to
+     * @param x X coordinate of destination
+     * @param y Y coordinate of destination
+     * @param width Width of area to blit
+     * @param height Height of area to blit
+     * @return True if cache was blitted. False if accelerated surfaces are not available (cache needs to be blitted directly).
+     */
+    private boolean blitAccelerated(Graphics g, int x, int y, int width, int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (!acceleratedCache || resizing || gc == null) {
+            releaseSurface();
+            return false;
+        }
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (surface == null || surface.getWidth() != cache.getWidth() || surface.getHeight() != cache.getHeight()) {
+                releaseSurface();
+                surface = gc.createCompatibleVolatileImage(cache.getWidth(), cache.getHeight());
+            }
+            int status = surface.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                releaseSurface();
+                continue;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                surfaceValid = false;
+            }
+
+            // upload changed region
+            if (!surfaceValid || surfaceOutdated != null) {
+                Rectangle r = surfaceValid ? surfaceOutdated : new Rectangle(0, 0, cache.getWidth(), cache.getHeight());
+                Graphics2D sg = surface.createGraphics();
+                sg.drawImage(cache.getBufferedImage(), r.x, r.y, r.x + r.width, r.y + r.height, r.x, r.y, r.x + r.width, r.y + r.height, null);
+                sg.dispose();
+                surfaceValid = true;
+                surfaceOutdated = null;
+            }
+
+            g.drawImage(surface, x, y, x + width, y + height, 0, 0, width, height, null);
+            if (!surface.contentsLost()) {
+                return true;
+            }
+            surfaceValid = false;
+        }
+        return false;
+    }
+
+    /**
+     * Marks region of accelerated surface outdated
+     *
+     * @param region Region in which cache has changed (null = whole cache)
+     */
+    private void invalidateSurface(Rectangle region) {
+        if (region == null || !surfaceValid) {
+            surfaceValid = false;
+            surfaceOutdated = null;
+        } else if (surfaceOutdated == null) {
+            surfaceOutdated = new Rectangle(region);
+        } else {
+            surfaceOutdated.add(region);
+        }
+    }
+
+    /**
+     * Releases accelerated surface (if allocated)
+     */
+    private void releaseSurface() {
+        if (surface != null) {
+            surface.flush();
+            surface = null;
+        }
+        surfaceValid = false;
+        surfaceOutdated = null;
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        releaseSurface();
+    }
+
+    /**
+     * @param enabled Blit caches of components via accelerated surfaces? (instead of converting the cache on every repaint)
+     */
+    public static void setAcceleratedCache(boolean enabled) {
+        acceleratedCache = enabled;
+    }
+
+    /**
+     * @return Are caches of components blitted via accelerated surfaces?
+     */
+    public static boolean isAcceleratedCache() {
+        return acceleratedCache;
+    }
+
     /** getSize() minus borders */
     public Dimension getRenderSize() {
         Insets i = getInsets();
@@ -169,10 +340,174 @@ public abstract class FastCustomDrawableComponent extends MPanel {
         return changed;
     }
 
-    public void setChanged() {
+    public synchronized void setChanged() {
+        dirtyRegion = null;
+        changed = true;
+    }
+
+    /**
+     * Marks only part of the component changed.
+     * Regions marked between two repaints are accumulated.
+     * May be called from any thread.
+     *
+     * @param region Changed region (in cache coordinates - without borders)
+     */
+    public synchronized void setChanged(Rectangle region) {
+        if (!changed) {
+            dirtyRegion = new Rectangle(region);
+        } else if (dirtyRegion != null) {
+            dirtyRegion.add(region);
+        }
         changed = true;
     }
 
+    /**
+     * Resets changed flag
+     *
+     * @return Region that has changed since last call (null = whole component)
+     */
+    private synchronized Rectangle takeDirtyRegion() {
+        Rectangle result = changed ? dirtyRegion : null;
+        dirtyRegion = null;
+        changed = false;
+        return result;
+    }
+
+    /**
+     * Prepares rendering the changed region of this component to the back buffer in background.
+     * Must be called on the event dispatch thread.
+     *
+     * @return True if component is to be rendered in background. False if this is not possible (e.g. because component was resized and must be rendered on the event dispatch thread).
+     */
+    boolean prepareBackgroundRendering() {
+        if (renderMode != RenderMode.Cached || !backgroundRenderingSupported || backgroundRendering != BackgroundRendering.Idle || !hasChanged()) {
+            return false;
+        }
+        Dimension size = getRenderSize();
+        if (size.width < 1 || size.height < 1 || !size.equals(cache.getSize())) {
+            return false;
+        }
+        if (backBuffer == null || backBuffer.getWidth() != cache.getWidth() || backBuffer.getHeight() != cache.getHeight()) {
+            backBuffer = new BufferedImageRGB(cache.getWidth(), cache.getHeight());
+            backBufferOutdated = null;
+        }
+        Rectangle region = takeDirtyRegion();
+        backgroundRenderSize = size;
+        backgroundRenderRegion = region == null ? null : region.intersection(new Rectangle(size));
+        backgroundRendering = BackgroundRendering.Rendering;
+        return true;
+    }
+
+    /**
+     * Renders component to back buffer.
+     * Called by render thread after prepareBackgroundRendering().
+     */
+    void renderInBackground() {
+        try {
+            backBuffer.copyFrom(cache, backBufferOutdated);
+            if (backgroundRenderRegion == null || !backgroundRenderRegion.isEmpty()) {
+                renderToCache(backBuffer, backgroundRenderSize, false, backgroundRenderRegion);
+            }
+        } catch (Exception e) {
+            Log.log(LogLevel.ERROR, this, e);
+        } finally {
+            backgroundRendering = BackgroundRendering.Done;
+        }
+    }
+
+    /**
+     * Swaps cache and back buffer - if background rendering has completed.
+     * Must be called on the event dispatch thread.
+     *
+     * @return Region of component (in component coordinates) that was updated. Null if no background rendering has completed.
+     */
+    Rectangle swapBuffers() {
+        if (backgroundRendering != BackgroundRendering.Done) {
+            return null;
+        }
+        BufferedImageRGB rendered = backBuffer;
+        backBuffer = cache;
+        cache = rendered;
+        backBufferOutdated = backgroundRenderRegion;
+        backgroundRendering = BackgroundRendering.Idle;
+        invalidateSurface(backgroundRenderRegion);
+        if (backgroundRenderRegion == null) {
+            return new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        Rectangle result = new Rectangle(backgroundRenderRegion);
+        result.translate(getRenderX(), getRenderY());
+        return result;
+    }
+
+    /**
+     * @return Is component currently rendered in background?
+     */
+    boolean isRenderingInBackground() {
+        return backgroundRendering == BackgroundRendering.Rendering;
+    }
+
+    /**
+     * @return Has background rendering completed - with the result not being displayed yet?
+     */
+    boolean hasBackgroundRenderingResult() {
+        return backgroundRendering == BackgroundRendering.Done;
+    }
+
+    /**
+     * @return Region of component (in component coordinates) that needs to be repainted in next frame (null = whole component)
+     */
+    synchronized Rectangle getRepaintRegion() {
+        if (renderMode != RenderMode.Cached || !changed || dirtyRegion == null) {
+            return null;
+        }
+        Rectangle result = new Rectangle(dirtyRegion);
+        result.translate(getRenderX(), getRenderY());
+        return result;
+    }
+
+    /**
+     * Repaints component in next frame of the FrameScheduler.
+     * Should be used instead of repaint() when reacting to port updates.
+     * May be called from any thread.
+     */
+    public void scheduleRepaint() {
+        FrameScheduler.scheduleRepaint(this);
+    }
+
+    /**
+     * @param hz Maximum rate of repaints scheduled via scheduleRepaint() (0 = limited by frame rate only)
+     */
+    public void setMaxRefreshRate(int hz) {
+        minRepaintInterval = hz > 0 ? 1000000000L / hz : 0;
+    }
+
+    /**
+     * @return Minimum time between two repaints scheduled via scheduleRepaint() in ns (0 = no limit)
+     */
+    long getMinRepaintInterval() {
+        return minRepaintInterval;
+    }
+
+    /**
+     * Called on the event dispatch thread before a repaint scheduled via scheduleRepaint() is performed.
+     * Never called while component is rendered in background.
+     * May be overridden to e.g. update Swing sub-components with the latest port values.
+     */
+    protected void updateForNextFrame() {
+    }
+
+    /**
+     * Components are rendered on the event dispatch thread by default.
+     * Components whose renderToCache() does not access any state that is modified
+     * on the event dispatch thread concurrently (or that synchronize or snapshot such state)
+     * may enable rendering in background (see FrameRenderer).
+     *
+     * @param supported Is renderToCache() of this component safe to be called from render threads?
+     */
+    protected void setBackgroundRenderingSupported(boolean supported) {
+        backgroundRenderingSupported = supported;
+    }
+
     protected BufferedImageRGB getCache() {
         return cache;
     }
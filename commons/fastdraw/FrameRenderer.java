@@ -0,0 +1,144 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons.fastdraw;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import org.finroc.core.port.ThreadLocalCache;
+
+/**
+ * Renders cached components in background - in parallel on all available cores.
+ *
+ * In every frame, the FrameScheduler hands all changed components to this class.
+ * Only components that enabled background rendering via setBackgroundRenderingSupported() are
+ * rendered in background - all others are still rendered on the event dispatch thread.
+ * Each of them is rendered to its back buffer by a worker of a ForkJoin pool.
+ * Once rendering has completed, the back buffer is swapped with the displayed cache
+ * on the event dispatch thread - which only blits the updated region.
+ * This way, the event dispatch thread is not blocked by rendering and
+ * a panel with many widgets is rendered as fast as the slowest widget.
+ */
+public class FrameRenderer {
+
+    /** Pool with render threads */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    ThreadLocalCache.get();
+                }
+            };
+            t.setName("Widget Render Thread " + t.getPoolIndex());
+            return t;
+        }
+    }, null, false);
+
+    /** Is rendering in background enabled? */
+    private static volatile boolean enabled = Runtime.getRuntime().availableProcessors() > 1;
+
+    /** Components to render in current frame (only accessed by event dispatch thread) */
+    private static final ArrayList<RenderTask> pending = new ArrayList<RenderTask>();
+
+    /**
+     * @param enabled Render cached components in background? (otherwise they are rendered on the event dispatch thread)
+     */
+    public static void setEnabled(boolean enabled) {
+        FrameRenderer.enabled = enabled;
+    }
+
+    /**
+     * @return Are cached components rendered in background?
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Pool with render threads (may also be used to parallelize rendering of single components)
+     */
+    static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Adds component to components rendered in current frame.
+     * Must be called on the event dispatch thread.
+     *
+     * @param component Component to render
+     * @return True if component will be rendered in background. False if it needs to be rendered on the event dispatch thread.
+     */
+    static boolean render(FastCustomDrawableComponent component) {
+        if (!enabled || !component.prepareBackgroundRendering()) {
+            return false;
+        }
+        pending.add(new RenderTask(component));
+        return true;
+    }
+
+    /**
+     * Starts rendering all components added in current frame.
+     * Must be called on the event dispatch thread.
+     */
+    static void startFrame() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final RenderTask[] tasks = pending.toArray(new RenderTask[pending.size()]);
+        pending.clear();
+        pool.execute(new RecursiveAction() {
+            /** UID */
+            private static final long serialVersionUID = -4627391066498237213L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Renders a single component
+     */
+    private static class RenderTask extends RecursiveAction {
+
+        /** UID */
+        private static final long serialVersionUID = 7393051278826516634L;
+
+        /** Component to render */
+        private final FastCustomDrawableComponent component;
+
+        private RenderTask(FastCustomDrawableComponent component) {
+            this.component = component;
+        }
+
+        @Override
+        protected void compute() {
+            component.renderInBackground();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons.fastdraw;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Central scheduler for repaints that are triggered by port updates.
+ *
+ * Components mark themselves dirty (from any thread). Once per frame,
+ * all dirty components are repainted on the event dispatch thread.
+ * Multiple requests for the same component before the next frame result
+ * in a single repaint - so EDT load is capped by the target frame rate,
+ * regardless of how often values are published.
+ *
+ * Cached components that marked only a region of themselves changed
+ * are only repainted in this region.
+ * If enabled, cached components are rendered in background by the
+ * FrameRenderer - and blitted in the frame after rendering has completed.
+ *
+ * If repainting takes longer than the frame time budget, the remaining
+ * components are repainted in the next frame.
+ * Components with a maximum refresh rate are kept dirty until their
+ * minimum repaint interval has elapsed.
+ */
+public class FrameScheduler implements ActionListener {
+
+    /** Default target frame rate */
+    public static final int DEFAULT_TARGET_FRAME_RATE = 50;
+
+    /** Default time budget per frame in ms */
+    public static final int DEFAULT_FRAME_TIME_BUDGET = 15;
+
+    /** Singleton instance */
+    private static final FrameScheduler instance = new FrameScheduler();
+
+    /** Components to repaint in next frame (in order of requests) */
+    private final ConcurrentLinkedQueue<JComponent> dirtyQueue = new ConcurrentLinkedQueue<JComponent>();
+
+    /** Components currently in dirty queue (to avoid duplicates) */
+    private final ConcurrentHashMap<JComponent, Boolean> dirtySet = new ConcurrentHashMap<JComponent, Boolean>();
+
+    /** Components whose repaint is deferred to a later frame (only accessed by event dispatch thread) */
+    private final ArrayList<JComponent> deferred = new ArrayList<JComponent>();
+
+    /** Timer that triggers frames (on event dispatch thread) */
+    private final Timer timer;
+
+    /** Time budget per frame in ns */
+    private volatile long frameTimeBudget = DEFAULT_FRAME_TIME_BUDGET * 1000000L;
+
+    private FrameScheduler() {
+        timer = new Timer(1000 / DEFAULT_TARGET_FRAME_RATE, this);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Marks component dirty. It will be repainted in the next frame.
+     * May be called from any thread.
+     *
+     * @param component Component to repaint
+     */
+    public static void scheduleRepaint(JComponent component) {
+        if (instance.dirtySet.putIfAbsent(component, Boolean.TRUE) == null) {
+            instance.dirtyQueue.add(component);
+            if (!instance.timer.isRunning()) {
+                instance.timer.start();
+            }
+        }
+    }
+
+    /**
+     * @param framesPerSecond Maximum number of frames per second
+     */
+    public static void setTargetFrameRate(int framesPerSecond) {
+        int delay = 1000 / Math.max(1, framesPerSecond);
+        instance.timer.setDelay(delay);
+        instance.timer.setInitialDelay(delay);
+    }
+
+    /**
+     * @return Maximum number of frames per second
+     */
+    public static int getTargetFrameRate() {
+        return 1000 / Math.max(1, instance.timer.getDelay());
+    }
+
+    /**
+     * @param ms Time budget per frame in ms (components not repainted within this time are repainted in next frame)
+     */
+    public static void setFrameTimeBudget(int ms) {
+        instance.frameTimeBudget = ms * 1000000L;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        long now = System.nanoTime();
+        long deadline = now + frameTimeBudget;
+        JComponent c;
+        while ((c = dirtyQueue.poll()) != null) {
+            if (c instanceof FastCustomDrawableComponent) {
+                FastCustomDrawableComponent fc = (FastCustomDrawableComponent)c;
+                if (fc.isRenderingInBackground()) {
+                    deferred.add(c); // stays in dirty set - blitted once rendering has completed
+                    continue;
+                }
+                long minInterval = fc.getMinRepaintInterval();
+                if (!fc.hasBackgroundRenderingResult() && minInterval > 0 && now - fc.lastScheduledRepaint < minInterval) {
+                    deferred.add(c); // stays in dirty set
+                    continue;
+                }
+                fc.lastScheduledRepaint = now;
+                dirtySet.remove(c);
+                if (c.isShowing() && repaint(fc) && dirtySet.putIfAbsent(c, Boolean.TRUE) == null) {
+                    deferred.add(c); // rendering in background
+                }
+            } else {
+                dirtySet.remove(c);
+                if (c.isShowing()) {
+                    c.paintImmediately(0, 0, c.getWidth(), c.getHeight());
+                }
+            }
+            now = System.nanoTime();
+            if (now > deadline) {
+                break;
+            }
+        }
+        FrameRenderer.startFrame();
+        if (deferred.size() > 0) {
+            dirtyQueue.addAll(deferred);
+            deferred.clear();
+        }
+        if (dirtyQueue.isEmpty()) {
+            timer.stop();
+            if (!dirtyQueue.isEmpty()) { // component could have been added concurrently
+                timer.start();
+            }
+        }
+    }
+
+    /**
+     * Blits result of completed background rendering and
+     * renders/repaints component with its latest changes
+     *
+     * @param fc Component to repaint
+     * @return True if component is rendered in background now (and needs to be blitted when this has completed)
+     */
+    private boolean repaint(FastCustomDrawableComponent fc) {
+        Rectangle rendered = fc.swapBuffers();
+        if (rendered == null || fc.hasChanged()) {
+            fc.updateForNextFrame();
+        }
+        boolean renderingInBackground = FrameRenderer.render(fc);
+        Rectangle region = null;
+        if (rendered != null && (renderingInBackground || !fc.hasChanged())) {
+            region = rendered;
+        } else if (renderingInBackground) {
+            return true;
+        } else {
+            region = fc.getRepaintRegion();
+            if (region != null && rendered != null) {
+                region.add(rendered);
+            }
+        }
+        if (region != null) {
+            fc.paintImmediately(region); // only blit the part of the cache that changed
+        } else {
+            fc.paintImmediately(0, 0, fc.getWidth(), fc.getHeight());
+        }
+        return renderingInBackground;
+    }
+}
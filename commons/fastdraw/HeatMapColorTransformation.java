@@ -23,7 +23,12 @@ package org.finroc.tools.gui.commons.fastdraw;
 
 import java.awt.Color;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.rrlib.serialization.ArrayBuffer;
 
@@ -34,6 +39,9 @@ import org.rrlib.serialization.ArrayBuffer;
  */
 public class HeatMapColorTransformation {
 
+    /** Minimum number of pixels per task when transforming in parallel */
+    private static final int MIN_PIXELS_PER_TASK = 16384;
+
     /**
      * Calls set with values/colors equally distributed between minValue and maxValue
      *
@@ -95,6 +103,9 @@ public class HeatMapColorTransformation {
         cachedColorLookupUint8 = null;
         cachedColorLookupUint16 = null;
         cachedColorLookupFloat = null;
+        cachedIntLookupUint8 = null;
+        cachedIntLookupUint16 = null;
+        cachedIntLookupFloat = null;
         this.values = values;
         this.colors = colors;
     }
@@ -117,91 +128,27 @@ public class HeatMapColorTransformation {
         ByteBuffer buffer = source.getByteBuffer();
 
         if (channel.getDataType() == ArrayBuffer.AttributeType.UNSIGNED_BYTE) {
-            if (cachedColorLookupUint8 == null) {
-                int values[] = new int[this.values.length];
-                for (int i = 0; i < values.length; i++) {
-                    values[i] = Math.max(0, Math.min(255, (int)this.values[i]));
-                }
-                byte[] newLookup = new byte[256 * 4];
-                newLookup[0] = (byte)colors[0].getRed();
-                newLookup[1] = (byte)colors[0].getGreen();
-                newLookup[2] = (byte)colors[0].getBlue();
-                for (int i = 1; i < values[0]; i++) {
-                    System.arraycopy(newLookup, 0, newLookup, i * 4, 3);
-                }
-                for (int color = 0; color < colors.length - 1; color++) {
-                    Color c1 = colors[color];
-                    Color c2 = colors[color + 1];
-                    int value1 = values[color];
-                    int value2 = values[color + 1];
-
-                    for (int i = value1; i < value2; i++) {
-                        double a = (i - value1) / ((double)(value2 - value1));
-                        newLookup[i * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
-                        newLookup[i * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
-                        newLookup[i * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
-                    }
-                }
-                int lastValue = values[values.length - 1];
-                Color lastColor = colors[colors.length - 1];
-                for (int i = lastValue; i < 256; i++) {
-                    newLookup[i * 4] = (byte)lastColor.getRed();
-                    newLookup[i * 4 + 1] = (byte)lastColor.getGreen();
-                    newLookup[i * 4 + 2] = (byte)lastColor.getBlue();
-                }
-                cachedColorLookupUint8 = newLookup;
-            }
+            byte[] lookup = getLookupUint8();
 
             int destinationIndex = 0;
             for (int i = 0; i < entries; i++) {
                 int index = 4 * (buffer.get(currentOffset) & 0xFF);
-                destination[destinationIndex] = cachedColorLookupUint8[index];
-                destination[destinationIndex + 1] = cachedColorLookupUint8[index + 1];
-                destination[destinationIndex + 2] = cachedColorLookupUint8[index + 2];
+                destination[destinationIndex] = lookup[index];
+                destination[destinationIndex + 1] = lookup[index + 1];
+                destination[destinationIndex + 2] = lookup[index + 2];
                 destinationIndex += 3;
                 currentOffset += stride;
             }
         } else if (channel.getDataType() == ArrayBuffer.AttributeType.UNSIGNED_SHORT) {
-            int lastValue = Math.max(0, Math.min(0xFFFF, (int)this.values[values.length - 1]));
-            if (cachedColorLookupUint16 == null) {
-                int values[] = new int[this.values.length];
-                for (int i = 0; i < values.length; i++) {
-                    values[i] = Math.max(0, Math.min(0xFFFF, (int)this.values[i]));
-                }
-
-                byte[] newLookup = new byte[(lastValue + 1) * 4];
-                newLookup[0] = (byte)colors[0].getRed();
-                newLookup[1] = (byte)colors[0].getGreen();
-                newLookup[2] = (byte)colors[0].getBlue();
-                for (int i = 1; i < values[0]; i++) {
-                    System.arraycopy(newLookup, 0, newLookup, i * 4, 3);
-                }
-                for (int color = 0; color < colors.length - 1; color++) {
-                    Color c1 = colors[color];
-                    Color c2 = colors[color + 1];
-                    int value1 = values[color];
-                    int value2 = values[color + 1];
-
-                    for (int i = value1; i < value2; i++) {
-                        double a = (i - value1) / ((double)(value2 - value1));
-                        newLookup[i * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
-                        newLookup[i * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
-                        newLookup[i * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
-                    }
-                }
-                Color lastColor = colors[colors.length - 1];
-                newLookup[lastValue * 4] = (byte)lastColor.getRed();
-                newLookup[lastValue * 4 + 1] = (byte)lastColor.getGreen();
-                newLookup[lastValue * 4 + 2] = (byte)lastColor.getBlue();
-                cachedColorLookupUint16 = newLookup;
-            }
+            byte[] lookup = getLookupUint16();
+            int lastValue = (lookup.length / 4) - 1;
 
             int destinationIndex = 0;
             for (int i = 0; i < entries; i++) {
                 int index = 4 * Math.min(lastValue, buffer.getShort(currentOffset) & 0xFFFF);
-                destination[destinationIndex] = cachedColorLookupUint16[index];
-                destination[destinationIndex + 1] = cachedColorLookupUint16[index + 1];
-                destination[destinationIndex + 2] = cachedColorLookupUint16[index + 2];
+                destination[destinationIndex] = lookup[index];
+                destination[destinationIndex + 1] = lookup[index + 1];
+                destination[destinationIndex + 2] = lookup[index + 2];
                 destinationIndex += 3;
                 currentOffset += stride;
             }
@@ -210,44 +157,25 @@ public class HeatMapColorTransformation {
             double lastValue = this.values[values.length - 1];
             double colorStep = (lastValue - firstValue) / (256 * (this.values.length - 1));
 
-            if (cachedColorLookupFloat == null) {
-                byte[] newLookup = new byte[((colors.length - 1) * 256 + 1) * 4];
-                for (int color = 0; color < colors.length - 1; color++) {
-                    Color c1 = colors[color];
-                    Color c2 = colors[color + 1];
-                    int offset = color * 256;
-                    for (int i = 0; i < 256; i++) {
-                        double a = i / 255.;
-                        newLookup[(offset + i) * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
-                        newLookup[(offset + i) * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
-                        newLookup[(offset + i) * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
-                    }
-                }
-                Color lastColor = colors[colors.length - 1];
-                int lastEntry = newLookup.length - 4;
-                newLookup[lastEntry] = (byte)lastColor.getRed();
-                newLookup[lastEntry + 1] = (byte)lastColor.getGreen();
-                newLookup[lastEntry + 2] = (byte)lastColor.getBlue();
-                cachedColorLookupFloat = newLookup;
-            }
+            byte[] lookup = getLookupFloat();
 
             int destinationIndex = 0;
-            int maxIndex = (cachedColorLookupFloat.length / 4) - 1;
+            int maxIndex = (lookup.length / 4) - 1;
             if (channel.getDataType() == ArrayBuffer.AttributeType.FLOAT) {
                 for (int i = 0; i < entries; i++) {
                     int index = 4 * Math.max(0, Math.min(maxIndex, (int)((buffer.getFloat(currentOffset) - firstValue) / colorStep)));
-                    destination[destinationIndex] = cachedColorLookupFloat[index];
-                    destination[destinationIndex + 1] = cachedColorLookupFloat[index + 1];
-                    destination[destinationIndex + 2] = cachedColorLookupFloat[index + 2];
+                    destination[destinationIndex] = lookup[index];
+                    destination[destinationIndex + 1] = lookup[index + 1];
+                    destination[destinationIndex + 2] = lookup[index + 2];
                     destinationIndex += 3;
                     currentOffset += stride;
                 }
             } else {
                 for (int i = 0; i < entries; i++) {
                     int index = 4 * Math.max(0, Math.min(maxIndex, (int)((buffer.getDouble(currentOffset) - firstValue) / colorStep)));
-                    destination[destinationIndex] = cachedColorLookupFloat[index];
-                    destination[destinationIndex + 1] = cachedColorLookupFloat[index + 1];
-                    destination[destinationIndex + 2] = cachedColorLookupFloat[index + 2];
+                    destination[destinationIndex] = lookup[index];
+                    destination[destinationIndex + 1] = lookup[index + 1];
+                    destination[destinationIndex + 2] = lookup[index + 2];
                     destinationIndex += 3;
                     currentOffset += stride;
                 }
@@ -255,6 +183,345 @@ public class HeatMapColorTransformation {
         }
     }
 
+    /**
+     * Transforms selected array buffer channel to RGB data in destination image.
+     * Rows are transformed in parallel.
+     *
+     * The first array dimension is interpreted as image width - all further dimensions as rows.
+     * Destination is resized to this size if necessary.
+     *
+     * @param destination Destination image
+     * @param source Source buffer
+     * @param channel Selected channel in source buffer
+     */
+    public void transform(BufferedImageRGB destination, ArrayBuffer source, ArrayBuffer.Channel channel) {
+        int[] dimensions = source.getArrayDimensions();
+        int entries = 1;
+        for (int i = 0; i < dimensions.length; i++) {
+            entries *= dimensions[i];
+        }
+        int width = dimensions.length > 0 ? dimensions[0] : 1;
+        if (entries <= 0 || width <= 0) {
+            return;
+        }
+        int height = entries / width;
+        destination.resize(width, height);
+
+        // create lookups in this thread
+        ArrayBuffer.AttributeType type = channel.getDataType();
+        int[] lookup;
+        if (type == ArrayBuffer.AttributeType.UNSIGNED_BYTE) {
+            if (cachedIntLookupUint8 == null) {
+                cachedIntLookupUint8 = toIntLookup(getLookupUint8());
+            }
+            lookup = cachedIntLookupUint8;
+        } else if (type == ArrayBuffer.AttributeType.UNSIGNED_SHORT) {
+            if (cachedIntLookupUint16 == null) {
+                cachedIntLookupUint16 = toIntLookup(getLookupUint16());
+            }
+            lookup = cachedIntLookupUint16;
+        } else if (type == ArrayBuffer.AttributeType.FLOAT || type == ArrayBuffer.AttributeType.DOUBLE) {
+            if (cachedIntLookupFloat == null) {
+                cachedIntLookupFloat = toIntLookup(getLookupFloat());
+            }
+            lookup = cachedIntLookupFloat;
+        } else {
+            return;
+        }
+
+        double firstValue = values[0];
+        double scale = (256 * (values.length - 1)) / (values[values.length - 1] - firstValue); // reciprocal of color step for floating point values
+        TransformTask task = new TransformTask(destination.getBuffer(), source.getByteBuffer(), channel, type, lookup, firstValue, scale, width, height);
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            FrameRenderer.getPool().invoke(task);
+        }
+    }
+
+    /**
+     * @param lookup Color lookup with RGB bytes + 1 unused byte per entry
+     * @return Color lookup with packed ARGB values
+     */
+    private static int[] toIntLookup(byte[] lookup) {
+        int[] result = new int[lookup.length / 4];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = 0xFF000000 | ((lookup[i * 4] & 0xFF) << 16) | ((lookup[i * 4 + 1] & 0xFF) << 8) | (lookup[i * 4 + 2] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Transforms range of rows to destination image - splitting it up if it is large
+     */
+    private static class TransformTask extends RecursiveAction {
+
+        /** UID */
+        private static final long serialVersionUID = -4420735508126153914L;
+
+        /** Destination pixels */
+        private final int[] destination;
+
+        /** Source buffer and selected channel */
+        private final ByteBuffer source;
+        private final ArrayBuffer.Channel channel;
+        private final ArrayBuffer.AttributeType type;
+
+        /** Color lookup to use */
+        private final int[] lookup;
+
+        /** Value of first color and reciprocal of color step (for floating point values) */
+        private final double firstValue, scale;
+
+        /** Image width */
+        private final int width;
+
+        /** Range of rows */
+        private final int fromRow, toRow;
+
+        /** Minimum number of rows per task */
+        private final int minRows;
+
+        private TransformTask(int[] destination, ByteBuffer source, ArrayBuffer.Channel channel, ArrayBuffer.AttributeType type, int[] lookup, double firstValue, double scale, int width, int height) {
+            this.destination = destination;
+            this.source = source;
+            this.channel = channel;
+            this.type = type;
+            this.lookup = lookup;
+            this.firstValue = firstValue;
+            this.scale = scale;
+            this.width = width;
+            this.fromRow = 0;
+            this.toRow = height;
+            this.minRows = Math.max(1, MIN_PIXELS_PER_TASK / width);
+        }
+
+        /**
+         * Creates task for part of parent task's rows
+         */
+        private TransformTask(TransformTask parent, int fromRow, int toRow) {
+            this.destination = parent.destination;
+            this.source = parent.source;
+            this.channel = parent.channel;
+            this.type = parent.type;
+            this.lookup = parent.lookup;
+            this.firstValue = parent.firstValue;
+            this.scale = parent.scale;
+            this.width = parent.width;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.minRows = parent.minRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow >= 2 * minRows) {
+                int middle = (fromRow + toRow) / 2;
+                invokeAll(new TransformTask(this, fromRow, middle), new TransformTask(this, middle, toRow));
+            } else {
+                transformRows();
+            }
+        }
+
+        /**
+         * Transforms rows fromRow to toRow.
+         * If channel values are stored contiguously, rows are read with bulk operations.
+         */
+        private void transformRows() {
+            ByteBuffer buffer = source.duplicate().order(source.order()); // own position for this thread
+            int stride = channel.getStride();
+            int offset = channel.getOffset() + fromRow * width * stride;
+            int destinationIndex = fromRow * width;
+            int rows = toRow - fromRow;
+
+            if (type == ArrayBuffer.AttributeType.UNSIGNED_BYTE) {
+                byte[] row = new byte[width];
+                for (int y = 0; y < rows; y++) {
+                    if (stride == 1) {
+                        buffer.position(offset);
+                        buffer.get(row);
+                    } else {
+                        for (int x = 0; x < width; x++) {
+                            row[x] = buffer.get(offset + x * stride);
+                        }
+                    }
+                    for (int x = 0; x < width; x++) {
+                        destination[destinationIndex + x] = lookup[row[x] & 0xFF];
+                    }
+                    offset += width * stride;
+                    destinationIndex += width;
+                }
+            } else if (type == ArrayBuffer.AttributeType.UNSIGNED_SHORT) {
+                int maxIndex = lookup.length - 1;
+                short[] row = new short[width];
+                ShortBuffer view = null;
+                if (stride == 2) {
+                    buffer.position(offset);
+                    view = buffer.asShortBuffer();
+                }
+                for (int y = 0; y < rows; y++) {
+                    if (view != null) {
+                        view.get(row);
+                    } else {
+                        for (int x = 0; x < width; x++) {
+                            row[x] = buffer.getShort(offset + x * stride);
+                        }
+                    }
+                    for (int x = 0; x < width; x++) {
+                        destination[destinationIndex + x] = lookup[Math.min(maxIndex, row[x] & 0xFFFF)];
+                    }
+                    offset += width * stride;
+                    destinationIndex += width;
+                }
+            } else {
+                int maxIndex = lookup.length - 1;
+                double[] row = new double[width];
+                float[] floatRow = type == ArrayBuffer.AttributeType.FLOAT ? new float[width] : null;
+                FloatBuffer floatView = null;
+                DoubleBuffer doubleView = null;
+                if (floatRow != null && stride == 4) {
+                    buffer.position(offset);
+                    floatView = buffer.asFloatBuffer();
+                } else if (floatRow == null && stride == 8) {
+                    buffer.position(offset);
+                    doubleView = buffer.asDoubleBuffer();
+                }
+                for (int y = 0; y < rows; y++) {
+                    if (floatView != null) {
+                        floatView.get(floatRow);
+                        for (int x = 0; x < width; x++) {
+                            row[x] = floatRow[x];
+                        }
+                    } else if (doubleView != null) {
+                        doubleView.get(row);
+                    } else if (floatRow != null) {
+                        for (int x = 0; x < width; x++) {
+                            row[x] = buffer.getFloat(offset + x * stride);
+                        }
+                    } else {
+                        for (int x = 0; x < width; x++) {
+                            row[x] = buffer.getDouble(offset + x * stride);
+                        }
+                    }
+                    for (int x = 0; x < width; x++) {
+                        int index = (int)((row[x] - firstValue) * scale);
+                        destination[destinationIndex + x] = lookup[index < 0 ? 0 : (index > maxIndex ? maxIndex : index)];
+                    }
+                    offset += width * stride;
+                    destinationIndex += width;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Color lookup for unsigned byte values (RGB bytes + 1 unused byte per entry)
+     */
+    private byte[] getLookupUint8() {
+        if (cachedColorLookupUint8 == null) {
+            int values[] = new int[this.values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.max(0, Math.min(255, (int)this.values[i]));
+            }
+            byte[] newLookup = new byte[256 * 4];
+            newLookup[0] = (byte)colors[0].getRed();
+            newLookup[1] = (byte)colors[0].getGreen();
+            newLookup[2] = (byte)colors[0].getBlue();
+            for (int i = 1; i < values[0]; i++) {
+                System.arraycopy(newLookup, 0, newLookup, i * 4, 3);
+            }
+            for (int color = 0; color < colors.length - 1; color++) {
+                Color c1 = colors[color];
+                Color c2 = colors[color + 1];
+                int value1 = values[color];
+                int value2 = values[color + 1];
+
+                for (int i = value1; i < value2; i++) {
+                    double a = (i - value1) / ((double)(value2 - value1));
+                    newLookup[i * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
+                    newLookup[i * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
+                    newLookup[i * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
+                }
+            }
+            int lastValue = values[values.length - 1];
+            Color lastColor = colors[colors.length - 1];
+            for (int i = lastValue; i < 256; i++) {
+                newLookup[i * 4] = (byte)lastColor.getRed();
+                newLookup[i * 4 + 1] = (byte)lastColor.getGreen();
+                newLookup[i * 4 + 2] = (byte)lastColor.getBlue();
+            }
+            cachedColorLookupUint8 = newLookup;
+        }
+        return cachedColorLookupUint8;
+    }
+
+    /**
+     * @return Color lookup for unsigned short values up to last value (RGB bytes + 1 unused byte per entry)
+     */
+    private byte[] getLookupUint16() {
+        if (cachedColorLookupUint16 == null) {
+            int lastValue = Math.max(0, Math.min(0xFFFF, (int)this.values[values.length - 1]));
+            int values[] = new int[this.values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.max(0, Math.min(0xFFFF, (int)this.values[i]));
+            }
+
+            byte[] newLookup = new byte[(lastValue + 1) * 4];
+            newLookup[0] = (byte)colors[0].getRed();
+            newLookup[1] = (byte)colors[0].getGreen();
+            newLookup[2] = (byte)colors[0].getBlue();
+            for (int i = 1; i < values[0]; i++) {
+                System.arraycopy(newLookup, 0, newLookup, i * 4, 3);
+            }
+            for (int color = 0; color < colors.length - 1; color++) {
+                Color c1 = colors[color];
+                Color c2 = colors[color + 1];
+                int value1 = values[color];
+                int value2 = values[color + 1];
+
+                for (int i = value1; i < value2; i++) {
+                    double a = (i - value1) / ((double)(value2 - value1));
+                    newLookup[i * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
+                    newLookup[i * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
+                    newLookup[i * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
+                }
+            }
+            Color lastColor = colors[colors.length - 1];
+            newLookup[lastValue * 4] = (byte)lastColor.getRed();
+            newLookup[lastValue * 4 + 1] = (byte)lastColor.getGreen();
+            newLookup[lastValue * 4 + 2] = (byte)lastColor.getBlue();
+            cachedColorLookupUint16 = newLookup;
+        }
+        return cachedColorLookupUint16;
+    }
+
+    /**
+     * @return Color lookup for floating point values - 256 entries between each pair of colors (RGB bytes + 1 unused byte per entry)
+     */
+    private byte[] getLookupFloat() {
+        if (cachedColorLookupFloat == null) {
+            byte[] newLookup = new byte[((colors.length - 1) * 256 + 1) * 4];
+            for (int color = 0; color < colors.length - 1; color++) {
+                Color c1 = colors[color];
+                Color c2 = colors[color + 1];
+                int offset = color * 256;
+                for (int i = 0; i < 256; i++) {
+                    double a = i / 255.;
+                    newLookup[(offset + i) * 4] = (byte)((1 - a) * c1.getRed() + a * c2.getRed());
+                    newLookup[(offset + i) * 4 + 1] = (byte)((1 - a) * c1.getGreen() + a * c2.getGreen());
+                    newLookup[(offset + i) * 4 + 2] = (byte)((1 - a) * c1.getBlue() + a * c2.getBlue());
+                }
+            }
+            Color lastColor = colors[colors.length - 1];
+            int lastEntry = newLookup.length - 4;
+            newLookup[lastEntry] = (byte)lastColor.getRed();
+            newLookup[lastEntry + 1] = (byte)lastColor.getGreen();
+            newLookup[lastEntry + 2] = (byte)lastColor.getBlue();
+            cachedColorLookupFloat = newLookup;
+        }
+        return cachedColorLookupFloat;
+    }
+
 //    /**
 //     * @param wrapped Array buffer with data to wrap as blittable
 //     * @return Blittable wrapper that does color transformation while blitting
@@ -277,6 +544,11 @@ public class HeatMapColorTransformation {
     private byte[] cachedColorLookupUint16;
     private byte[] cachedColorLookupFloat;
 
+    /** Color lookups with packed ARGB values (for transforming to BufferedImageRGB) - created lazily */
+    private int[] cachedIntLookupUint8;
+    private int[] cachedIntLookupUint16;
+    private int[] cachedIntLookupFloat;
+
     private double[] values;
     private Color[] colors;
 }
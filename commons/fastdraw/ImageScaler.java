@@ -0,0 +1,294 @@
+//
+// You received this file as part of Finroc
+// A framework for intelligent robot control
+//
+// Copyright (C) Finroc GbR (finroc.org)
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//----------------------------------------------------------------------
+package org.finroc.tools.gui.commons.fastdraw;
+
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.finroc.plugins.data_types.Blittable;
+
+/**
+ * Scales images directly into the int raster of a BufferedImageRGB.
+ *
+ * Index and weight tables are precomputed whenever source size, destination size
+ * or filter change - and buffers are reused - so scaling a video stream
+ * does not allocate any image memory per frame.
+ * Rows are scaled in parallel.
+ *
+ * Instances are not thread-safe (one instance should be used per widget).
+ */
+public class ImageScaler {
+
+    /** Scaling filters */
+    public enum Filter {
+
+        /** Nearest neighbour (fastest) */
+        Nearest,
+
+        /** Bilinear interpolation (smooth, for upscaling) */
+        Bilinear,
+
+        /** Average of all covered source pixels (smooth, for downscaling) */
+        Box
+    }
+
+    /** Minimum number of destination pixels scaled by one task */
+    private static final int MIN_PIXELS_PER_TASK = 16384;
+
+    /** Copy of source image - if it cannot be accessed directly */
+    private BufferedImageRGB sourceBuffer;
+
+    /** Current source image data */
+    private int[] source;
+    private int sourceWidth, sourceHeight;
+
+    /** Current destination */
+    private int[] destination;
+    private int destinationStride;
+    private final Rectangle destinationArea = new Rectangle();
+
+    /** Filter that tables were calculated for */
+    private Filter tableFilter;
+
+    /** Sizes that tables were calculated for */
+    private int tableSourceWidth, tableSourceHeight, tableDestinationWidth, tableDestinationHeight;
+
+    /**
+     * Tables for each destination column/row.
+     * Nearest: index of source column/row offset in table 0
+     * Bilinear: indices of the two source columns/row offsets in table 0 and 1 - weight of second (0-256) in weight table
+     * Box: first source column/row in table 0 - last source column/row + 1 in table 1
+     */
+    private int[] xTable0 = new int[0], xTable1 = new int[0], xWeight = new int[0];
+    private int[] yTable0 = new int[0], yTable1 = new int[0], yWeight = new int[0];
+
+    /**
+     * Scales image
+     *
+     * @param image Image to scale
+     * @param dest Image to write result to
+     * @param destArea Area in destination image to scale image to (must be inside destination image)
+     * @param filter Filter to use
+     */
+    public void scale(Blittable image, BufferedImageRGB dest, Rectangle destArea, Filter filter) {
+        if (image.getWidth() <= 0 || image.getHeight() <= 0 || destArea.width <= 0 || destArea.height <= 0) {
+            return;
+        }
+
+        // get source pixels
+        if (image instanceof BufferedImageRGB) {
+            source = ((BufferedImageRGB)image).getBuffer();
+        } else {
+            if (sourceBuffer == null) {
+                sourceBuffer = new BufferedImageRGB(image.getWidth(), image.getHeight());
+            } else {
+                sourceBuffer.resize(image.getWidth(), image.getHeight());
+            }
+            image.blitTo(sourceBuffer);
+            source = sourceBuffer.getBuffer();
+        }
+        sourceWidth = image.getWidth();
+        sourceHeight = image.getHeight();
+        destination = dest.getBuffer();
+        destinationStride = dest.getWidth();
+        destinationArea.setBounds(destArea);
+        updateTables(filter);
+
+        // scale rows in parallel
+        RowTask task = new RowTask(0, destArea.height, Math.max(1, MIN_PIXELS_PER_TASK / destArea.width));
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            FrameRenderer.getPool().invoke(task);
+        }
+        source = null;
+        destination = null;
+    }
+
+    /**
+     * Recalculates tables - if sizes or filter changed
+     *
+     * @param filter Filter to use
+     */
+    private void updateTables(Filter filter) {
+        int dw = destinationArea.width;
+        int dh = destinationArea.height;
+        if (filter == tableFilter && sourceWidth == tableSourceWidth && sourceHeight == tableSourceHeight && dw == tableDestinationWidth && dh == tableDestinationHeight) {
+            return;
+        }
+        if (xTable0.length < dw) {
+            xTable0 = new int[dw];
+            xTable1 = new int[dw];
+            xWeight = new int[dw];
+        }
+        if (yTable0.length < dh) {
+            yTable0 = new int[dh];
+            yTable1 = new int[dh];
+            yWeight = new int[dh];
+        }
+        calculateTable(filter, sourceWidth, dw, 1, xTable0, xTable1, xWeight);
+        calculateTable(filter, sourceHeight, dh, filter == Filter.Box ? 1 : sourceWidth, yTable0, yTable1, yWeight);
+        tableFilter = filter;
+        tableSourceWidth = sourceWidth;
+        tableSourceHeight = sourceHeight;
+        tableDestinationWidth = dw;
+        tableDestinationHeight = dh;
+    }
+
+    /**
+     * Calculates tables for one dimension
+     *
+     * @param filter Filter to use
+     * @param sourceSize Number of source columns/rows
+     * @param destSize Number of destination columns/rows
+     * @param factor Factor to multiply source indices with (to get row offsets)
+     * @param table0 Table 0 to fill
+     * @param table1 Table 1 to fill
+     * @param weight Weight table to fill
+     */
+    private static void calculateTable(Filter filter, int sourceSize, int destSize, int factor, int[] table0, int[] table1, int[] weight) {
+        double ratio = ((double)sourceSize) / destSize;
+        for (int d = 0; d < destSize; d++) {
+            switch (filter) {
+            case Nearest:
+                table0[d] = Math.min(sourceSize - 1, (int)((d + 0.5) * ratio)) * factor;
+                break;
+            case Bilinear:
+                double pos = Math.max(0, Math.min(sourceSize - 1, (d + 0.5) * ratio - 0.5));
+                int index = (int)pos;
+                table0[d] = index * factor;
+                table1[d] = Math.min(sourceSize - 1, index + 1) * factor;
+                weight[d] = (int)((pos - index) * 256);
+                break;
+            case Box:
+                table0[d] = (int)(((long)d) * sourceSize / destSize);
+                table1[d] = Math.max(table0[d] + 1, (int)(((long)d + 1) * sourceSize / destSize));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Scales rows of destination area
+     *
+     * @param fromRow First row (relative to destination area)
+     * @param toRow Last row + 1
+     */
+    private void scaleRows(int fromRow, int toRow) {
+        final int[] src = source;
+        final int[] dst = destination;
+        final int dw = destinationArea.width;
+        for (int dy = fromRow; dy < toRow; dy++) {
+            int destOffset = (destinationArea.y + dy) * destinationStride + destinationArea.x;
+            switch (tableFilter) {
+            case Nearest: {
+                int row = yTable0[dy];
+                for (int dx = 0; dx < dw; dx++) {
+                    dst[destOffset + dx] = src[row + xTable0[dx]];
+                }
+                break;
+            }
+            case Bilinear: {
+                int row0 = yTable0[dy];
+                int row1 = yTable1[dy];
+                int wy = yWeight[dy];
+                for (int dx = 0; dx < dw; dx++) {
+                    int x0 = xTable0[dx];
+                    int x1 = xTable1[dx];
+                    int wx = xWeight[dx];
+                    int top = interpolate(src[row0 + x0], src[row0 + x1], wx);
+                    int bottom = interpolate(src[row1 + x0], src[row1 + x1], wx);
+                    dst[destOffset + dx] = interpolate(top, bottom, wy);
+                }
+                break;
+            }
+            case Box: {
+                int yStart = yTable0[dy];
+                int yEnd = yTable1[dy];
+                for (int dx = 0; dx < dw; dx++) {
+                    int xStart = xTable0[dx];
+                    int xEnd = xTable1[dx];
+                    int r = 0, g = 0, b = 0;
+                    for (int y = yStart; y < yEnd; y++) {
+                        for (int i = y * sourceWidth + xStart, n = y * sourceWidth + xEnd; i < n; i++) {
+                            int rgb = src[i];
+                            r += (rgb >> 16) & 0xFF;
+                            g += (rgb >> 8) & 0xFF;
+                            b += rgb & 0xFF;
+                        }
+                    }
+                    int count = (xEnd - xStart) * (yEnd - yStart);
+                    dst[destOffset + dx] = ((r / count) << 16) | ((g / count) << 8) | (b / count);
+                }
+                break;
+            }
+            }
+        }
+    }
+
+    /**
+     * Interpolates between two colors in RGB format
+     * (red and blue are processed together)
+     *
+     * @param color1 first color
+     * @param color2 second color
+     * @param alpha Alpha (0-256). 0 = Color1, 256 = Color2
+     * @return Interpolated color
+     */
+    private static int interpolate(int color1, int color2, int alpha) {
+        int rb = ((((color1 & 0xFF00FF) * (256 - alpha)) + ((color2 & 0xFF00FF) * alpha)) >>> 8) & 0xFF00FF;
+        int g = ((((color1 & 0xFF00) * (256 - alpha)) + ((color2 & 0xFF00) * alpha)) >>> 8) & 0xFF00;
+        return rb | g;
+    }
+
+    /**
+     * Scales a range of rows - splitting it up for parallel execution
+     */
+    private class RowTask extends RecursiveAction {
+
+        /** UID */
+        private static final long serialVersionUID = 2419487710533610237L;
+
+        /** Range of rows */
+        private final int fromRow, toRow;
+
+        /** Minimum number of rows per task */
+        private final int minRows;
+
+        private RowTask(int fromRow, int toRow, int minRows) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.minRows = minRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow >= 2 * minRows) {
+                int middle = (fromRow + toRow) / 2;
+                invokeAll(new RowTask(fromRow, middle, minRows), new RowTask(middle, toRow, minRows));
+            } else {
+                scaleRows(fromRow, toRow);
+            }
+        }
+    }
+}
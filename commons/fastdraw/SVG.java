@@ -154,7 +154,7 @@ public class SVG implements Paintable {
     }
 
     @Override
-    public void paint(Graphics2D g, FastBufferedImage imageBuffer) {
+    public synchronized void paint(Graphics2D g, FastBufferedImage imageBuffer) { // synchronized, as SVGs may be shared by widgets rendered in parallel
         if (painter == null) {
             painter = new SVGPanel();
             painter.setSvgURI(uri);
@@ -56,6 +56,12 @@ public class RulerOfTheForest extends JPanel {
     private boolean mirrored;
     private List<Integer> minorTicksList = new ArrayList<Integer>();
     private List<Integer> majorTicksList = new ArrayList<Integer>();
+
+    /** Incremented whenever tick lists are calculated for different values (min, max, length) */
+    private int ticksVersion;
+
+    /** Values that tick lists were calculated for */
+    private double ticksMin = Double.NaN, ticksMax = Double.NaN, ticksLength = Double.NaN;
     private static final int TOP = 1, BOTTOM = 2, LEFT = 4, RIGHT = 8;
     private int borders;
     private DecimalFormat labelFormat = new DecimalFormat();
@@ -131,6 +137,12 @@ public class RulerOfTheForest extends JPanel {
         // Calculate tick size
         double pixelLength = getLength() - 1;
         double realLength = max - min;
+        if (min != ticksMin || max != ticksMax || pixelLength != ticksLength) {
+            ticksMin = min;
+            ticksMax = max;
+            ticksLength = pixelLength;
+            ticksVersion++;
+        }
         if (realLength == 0 || pixelLength == 0) {
             return;
         }
@@ -211,6 +223,13 @@ public class RulerOfTheForest extends JPanel {
         return minorTicksList;
     }
 
+    /**
+     * @return Version of tick lists - changes whenever ticks are at different positions after painting ruler
+     */
+    public int getTicksVersion() {
+        return ticksVersion;
+    }
+
 
     public static class RulerLabel extends JPanel {
 
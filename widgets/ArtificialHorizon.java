@@ -93,11 +93,14 @@ public class ArtificialHorizon extends Widget {
         /** current circleIndents was calculated for this size */
         private int indentsForSize = 0;
 
-        /** Color table for angles (+1000) */
-        private final int[] colorTable = new int[2000];
+        /** Color table for angles (+1000) - replaced (not modified) when widget properties change, as it is read by render threads */
+        private volatile int[] colorTable;
 
         ArtificialHorizonUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
+            inclineX.enableValueCache();
+            inclineY.enableValueCache();
             inclineX.addChangeListener(this);
             inclineY.addChangeListener(this);
             widgetPropertiesChanged();
@@ -117,6 +120,7 @@ public class ArtificialHorizon extends Widget {
             }
 
             // calculation values
+            final int[] colorTable = this.colorTable;
             final int mx = size / 2;
             final int my = size / 2;
             final double incX = -inclineX.getDouble() * inputValueFactorX;
@@ -226,6 +230,7 @@ public class ArtificialHorizon extends Widget {
         public void widgetPropertiesChanged() {
 
             // Calculate color table
+            int[] colorTable = new int[2000];
             colorTable[1000] = sky.getRGB();
             colorTable[1180] = farGround.getRGB();
             colorTable[1270] = nearGround.getRGB();
@@ -252,6 +257,7 @@ public class ArtificialHorizon extends Widget {
             for (int i = 1360; i < 2000; i++) {
                 colorTable[i] = colorTable[i - 360];
             }
+            this.colorTable = colorTable;
 
             super.setChanged();
             repaint();
@@ -259,8 +265,12 @@ public class ArtificialHorizon extends Widget {
 
         @Override
         public void portChanged(AbstractPort origin, NumericRepresentation value) {
+            WidgetInput.Numeric input = (origin == inclineX.getPort()) ? inclineX : inclineY;
+            if (!input.valueChanged(value)) {
+                return;
+            }
             super.setChanged();
-            repaint();
+            scheduleRepaint();
         }
     }
 }
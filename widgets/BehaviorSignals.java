@@ -40,7 +40,6 @@ import javax.swing.BorderFactory;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
 
 import org.finroc.tools.gui.Widget;
 import org.finroc.tools.gui.WidgetInput;
@@ -110,7 +109,7 @@ public class BehaviorSignals extends Widget {
         return ib2cServiceClientPort;
     }
 
-    class BehaviourSignalsUI extends WidgetUI implements WidgetPortsListener {
+    class BehaviourSignalsUI extends WidgetUI implements WidgetPortsListener.Indexed {
 
         /** UID */
         private static final long serialVersionUID = -27396902858121219L;
@@ -188,22 +187,32 @@ public class BehaviorSignals extends Widget {
         }
 
         @Override
-        public void portChanged(WidgetPorts<?> origin, AbstractPort port, Object value) {
+        public void portChanged(WidgetPorts<?> origin, int index, AbstractPort port, Object value) {
             try {
-                int index = origin.indexOf(port);
                 if (origin == statusInputs && index >= 0) {
                     BehaviorStatus status = (BehaviorStatus)value;
+                    if (!statusInputs.get(index).valueChanged(status)) {
+                        return;
+                    }
 
                     // Ensure that we have a line below the last entry  TODO: Does this make sense here?
                     //gbc.insets = (index == entries.size() - 1) ? padInsets : nullInsets;
 
                     entries.get(index).update(status);
+                    scheduleRepaint();
                 }
             } catch (Exception e) {
                 // not entirely thread-safe (for efficiency reasons; AWT Data strutures are not modified => not corrupted) - so okay...
             }
         }
 
+        @Override
+        protected void updateForNextFrame() {
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).applyPendingStatus();
+            }
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
@@ -221,6 +230,9 @@ public class BehaviorSignals extends Widget {
             int remoteModuleHandle;
             BehaviorStatus.StimulationMode currentStimulationMode = BehaviorStatus.StimulationMode.Auto;
 
+            /** Latest status received via port that has not been applied to Swing components yet (null if there is none) */
+            volatile BehaviorStatus pendingStatus;
+
             public Entry(int lineIndex) {
                 index = lineIndex - 1;
                 label = new JLabel();
@@ -252,26 +264,35 @@ public class BehaviorSignals extends Widget {
                 add(rating, gbc);
             }
 
-            public void update(final BehaviorStatus status) {
-                if ((!status.name.equals(label.getText())) || currentStimulationMode != status.stimulationMode || activation.getValue() != status.activation ||
-                        activity.getValue() != status.activity || rating.getValue() != status.targetRating) {
-                    SwingUtilities.invokeLater(new Runnable() {
-
-                        @Override
-                        public void run() {
-                            if (!status.name.equals(label.getText())) {
-                                label.setText(status.name);
-                            }
-                            currentStimulationMode = status.stimulationMode;
-                            stimulationMode.setSelectedItem(status.stimulationMode);
-                            activation.setValue(status.activation);
-                            activity.setValue(status.activity);
-                            rating.setValue(status.targetRating);
-                            remoteModuleHandle = status.moduleHandle;
-                        }
+            /**
+             * Stores status - it is applied to Swing components in next frame (see applyPendingStatus())
+             *
+             * @param status Latest status received via port
+             */
+            public void update(BehaviorStatus status) {
+                pendingStatus = status;
+            }
 
-                    });
+            /**
+             * Applies latest received status to Swing components (called on the event dispatch thread)
+             */
+            public void applyPendingStatus() {
+                BehaviorStatus status = pendingStatus;
+                pendingStatus = null;
+                if (status == null) {
+                    return;
+                }
+                if (!status.name.equals(label.getText())) {
+                    label.setText(status.name);
+                }
+                if (currentStimulationMode != status.stimulationMode) {
+                    currentStimulationMode = status.stimulationMode;
+                    stimulationMode.setSelectedItem(status.stimulationMode);
                 }
+                activation.setValue(status.activation);
+                activity.setValue(status.activity);
+                rating.setValue(status.targetRating);
+                remoteModuleHandle = status.moduleHandle;
             }
 
             public void clear() {
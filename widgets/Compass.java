@@ -101,23 +101,32 @@ public class Compass extends Widget {
         private Dimension curBackgroundBufferSize = new Dimension(0, 0);
         private double factor;
         private AffineTransform stdTransform;
-        private boolean propChange = false;
+
+        /** Incremented whenever widget properties change (on the event dispatch thread) - background buffer is recalculated if it was rendered for an older version */
+        private volatile int propertiesVersion;
+        private int backgroundBufferVersion;
 
         private CompassUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
             initSVG();
+            yaw.enableValueCache();
             yaw.addChangeListener(this);
         }
 
         @Override
         public void portChanged(AbstractPort origin, NumericRepresentation value) {
+            if (!yaw.valueChanged(value)) {
+                return;
+            }
             setChanged();
-            repaint();
+            scheduleRepaint();
         }
 
         @Override
         protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized) throws OperationNotSupportedException {
-            if (propChange || backgroundBuffer == null || (!renderSize.equals(curBackgroundBufferSize))) {
+            int version = propertiesVersion;
+            if (version != backgroundBufferVersion || backgroundBuffer == null || (!renderSize.equals(curBackgroundBufferSize))) {
 
                 // recalculate background buffer
                 if (backgroundBuffer == null) {
@@ -127,7 +136,7 @@ public class Compass extends Widget {
                 }
 
                 curBackgroundBufferSize.setSize(renderSize);
-                propChange = false;
+                backgroundBufferVersion = version;
                 backgroundBuffer.fill(getBackground().getRGB());
                 double size = Math.min(renderSize.width, renderSize.height);
                 factor = size / svgSize;
@@ -177,7 +186,7 @@ public class Compass extends Widget {
 
         @Override
         public void widgetPropertiesChanged() {
-            propChange = true;
+            propertiesVersion++;
         }
     }
 }
@@ -54,6 +54,7 @@ import org.finroc.tools.gui.WidgetPort;
 import org.finroc.tools.gui.WidgetPorts;
 import org.finroc.tools.gui.WidgetUI;
 import org.finroc.tools.gui.commons.Util;
+import org.finroc.tools.gui.commons.fastdraw.FrameScheduler;
 import org.finroc.tools.gui.themes.Theme;
 import org.finroc.tools.gui.themes.Themes;
 import org.finroc.tools.gui.util.embeddedfiles.EmbeddedPaintable;
@@ -173,6 +174,9 @@ public class GeometryRenderer extends Widget {
         Point lastMousePressPoint;
         Point lastMouseDragPoint;
 
+        /** Batch for publishing click outputs together */
+        final WidgetOutput.PublishBatch publishBatch = new WidgetOutput.PublishBatch();
+
         public GeometryRendererUI() {
             super(RenderMode.Swing, TRAIT_REQUIRES_BORDER_IN_DARK_COLORING);
             this.setLayout(new BorderLayout());
@@ -294,9 +298,7 @@ public class GeometryRenderer extends Widget {
                     lastMouseDragPoint = me.getPoint();
                 if (resetClickPosOnMouseRelease) { // old behaviour
                     Point2D transformed = getPoint(lastMouseDragPoint);
-                    clickX.publish(transformed.getX());
-                    clickY.publish(transformed.getY());
-                    clickCounter.publish(clickCounter.getDouble() + 1);
+                    publishBatch.add(clickX, transformed.getX()).add(clickY, transformed.getY()).add(clickCounter, clickCounter.getDouble() + 1).publish();
                     Log.log(LogLevel.DEBUG, "Target pose " + transformed.toString());
                 } else {
                     if (me.getID() == MouseEvent.MOUSE_PRESSED) {
@@ -307,22 +309,18 @@ public class GeometryRenderer extends Widget {
                 break;
             case ResetPoint:
                 if (resetClickPosOnMouseRelease) {
-                    clickX.publish(0);
-                    clickY.publish(0);
+                    publishBatch.add(clickX, 0).add(clickY, 0).publish();
                 } else {
                     Point2D transformedPress = getPoint(lastMousePressPoint);
                     Point2D transformedRelease = getPoint(lastMouseDragPoint);
 
-                    clickX.publish(transformedPress.getX());
-                    clickY.publish(transformedPress.getY());
-                    clickCounter.publish(clickCounter.getDouble() + 1);
-
                     double yaw = Math.atan2(transformedRelease.getY() - transformedPress.getY(), transformedRelease.getX() - transformedPress.getX());
                     Pose3D publish = new Pose3D();
                     publish.x = transformedPress.getX();
                     publish.y = transformedPress.getY();
                     publish.yaw = yaw;
-                    clickPose.publish(publish);
+                    publishBatch.add(clickX, transformedPress.getX()).add(clickY, transformedPress.getY()).add(clickCounter, clickCounter.getDouble() + 1);
+                    publishBatch.add(clickPose, publish).publish();
                     Log.log(LogLevel.DEBUG, "Target pose " + publish.toString());
 
                     lastMousePressPoint = null;
@@ -523,6 +521,7 @@ public class GeometryRenderer extends Widget {
                 wp.addChangeListener(this);
             }
             for (WidgetInput.Numeric wp : objectCoordinates) {
+                wp.enableValueCache();
                 wp.addChangeListener(renderer);
             }
             for (WidgetInput.CC<Pose2D> wp : objectPoses) {
@@ -544,7 +543,7 @@ public class GeometryRenderer extends Widget {
 
         @Override
         public void portChanged(AbstractPort origin, PaintablePortData value) {
-            renderer.repaint();
+            FrameScheduler.scheduleRepaint(renderer);
         }
 
         public void drawGeometries(Graphics2D g2d) {
@@ -701,7 +700,7 @@ public class GeometryRenderer extends Widget {
 
             @Override
             public void portChanged(AbstractPort origin, Object value) {
-                repaint();
+                FrameScheduler.scheduleRepaint(this);
             }
         }
 
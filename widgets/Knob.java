@@ -180,7 +180,7 @@ public class Knob extends Widget {
             if (value != null) {
                 //currentValue = value.
                 //setChanged();
-                repaint();
+                scheduleRepaint();
             }
         }
 
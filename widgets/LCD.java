@@ -140,11 +140,22 @@ public class LCD extends Widget {
         //private Map<String, SVGPanel> digits;
         //private Number oldNumber;
 
-        private DecimalFormat primaryFormat = new DecimalFormat("######0.00");
-        private DecimalFormat fallbackFormat = new DecimalFormat("0.000E0");
+        /** Number formats - modified on the event dispatch thread and used by render threads (access synchronized on primaryFormat) */
+        private final DecimalFormat primaryFormat = new DecimalFormat("######0.00");
+        private final DecimalFormat fallbackFormat = new DecimalFormat("0.000E0");
+
+        /** Has value changed since last frame? */
+        private volatile boolean valueChanged;
+
+        /** Layout of digits currently in cache (null if cache needs to be rendered completely) */
+        private volatile DisplayLayout renderedLayout;
+
+        /** Layout of digits to render in next frame (calculated in updateForNextFrame()) */
+        private volatile DisplayLayout nextLayout;
 
         private LCDUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
             if (blocksForDigits == null) {
                 blocksForDigits = new HashMap<String, List<String>>();
                 blocksForDigits.put("0", Arrays.asList(new String[] {"NW", "N", "NE", "SW", "S", "SE"}));
@@ -194,6 +205,15 @@ public class LCD extends Widget {
 
         @Override
         public void widgetPropertiesChanged() {
+            synchronized (primaryFormat) {
+                updateFormats();
+            }
+        }
+
+        /**
+         * Updates number formats from widget properties
+         */
+        private void updateFormats() {
 
             primaryFormat.setMaximumIntegerDigits(50);
             primaryFormat.setMinimumIntegerDigits(1);
@@ -220,7 +240,7 @@ public class LCD extends Widget {
                 Matcher m = CXX_PATTERN.matcher(format);
                 if (!m.matches()) {
                     format = "%6.2f";
-                    widgetPropertiesChanged();
+                    updateFormats();
                 } else {
                     try {
                         primaryFormat.setMaximumIntegerDigits(Integer.parseInt(m.group(1)));
@@ -229,7 +249,7 @@ public class LCD extends Widget {
                         primaryFormat.setMinimumFractionDigits(n);
                     } catch (Exception e) {
                         format = "%6.2f";
-                        widgetPropertiesChanged();
+                        updateFormats();
                     }
                 }
                 break;
@@ -239,7 +259,7 @@ public class LCD extends Widget {
                     primaryFormat.applyPattern(format);
                 } catch (Exception e) {
                     format = "#######0.00";
-                    widgetPropertiesChanged();
+                    updateFormats();
                 }
                 break;
             }
@@ -269,18 +289,124 @@ public class LCD extends Widget {
             //System.out.println(oldNumber.toString() + " " + value.toString() + " " + value.equals(oldNumber));
             //}
             //oldNumber = new Number(value.)
-            setChanged();
-            repaint();
+            if (!input.valueChanged(value)) {
+                return;
+            }
+            valueChanged = true;
+            scheduleRepaint();
+        }
+
+        @Override
+        public boolean hasChanged() {
+            return super.hasChanged() || valueChanged;
+        }
+
+        @Override
+        protected void updateForNextFrame() {
+            if (!valueChanged) {
+                return;
+            }
+            valueChanged = false;
+            Dimension renderSize = getRenderSize();
+            DisplayLayout layout = computeLayout(renderSize);
+            DisplayLayout current = renderedLayout;
+            if (layout == null || current == null || !layout.fitsTo(current)) {
+                nextLayout = null;
+                setChanged();
+                return;
+            }
+
+            // mark changed digits - and any elements overlapping them, so that these are redrawn completely
+            Rectangle dirty = null;
+            for (int i = 0; i < layout.text.length(); i++) {
+                if (layout.text.charAt(i) != current.text.charAt(i)) {
+                    if (dirty == null) {
+                        dirty = new Rectangle(layout.blocks[i]);
+                    } else {
+                        dirty.add(layout.blocks[i]);
+                    }
+                }
+            }
+            if (dirty == null) {
+                return;
+            }
+            nextLayout = layout;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (Rectangle r : layout.blocks) {
+                    grown |= addIfOverlapping(dirty, r);
+                }
+                grown |= addIfOverlapping(dirty, layout.comma);
+            }
+            setChanged(dirty);
+        }
+
+        /**
+         * @param region Region to possibly extend
+         * @param element Bounds of rendered element
+         * @return True if element overlaps region and region was extended to contain it completely
+         */
+        private boolean addIfOverlapping(Rectangle region, Rectangle element) {
+            if (element == null || !region.intersects(element) || region.contains(element)) {
+                return false;
+            }
+            region.add(element);
+            return true;
         }
 
         @Override
         protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized) {
+            renderToCache(cache, renderSize, resized, null);
+        }
 
-            if (renderSize.height < 2 || renderSize.width < 2) {
+        @Override
+        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion) {
+
+            DisplayLayout layout = nextLayout;
+            nextLayout = null;
+            if (layout == null || dirtyRegion == null || renderedLayout == null || !layout.fitsTo(renderedLayout)) {
+                valueChanged = false;
+                layout = computeLayout(renderSize);
+                dirtyRegion = null;
+            }
+            renderedLayout = layout;
+            if (layout == null) {
                 cache.fill(0);
                 return;
             }
 
+            Color background = layout.warn ? lcdWarningBackground : lcdBackground;
+            cache.drawFilledRectangle(dirtyRegion != null ? dirtyRegion : new Rectangle(renderSize), background.getRGB());
+            try {
+                updateColors(layout.warn);
+            } catch (Exception e) {
+                Log.log(LogLevel.ERROR, this, e);
+            }
+            for (int i = layout.text.length() - 1; i >= 0; i--) {
+                if (dirtyRegion == null || dirtyRegion.intersects(layout.blocks[i])) {
+                    renderBlock(cache, layout.blocks[i], layout.text.substring(i, i + 1));
+                }
+                if (i == layout.commaPos && (dirtyRegion == null || dirtyRegion.intersects(layout.comma))) {
+                    renderComma(cache, layout.comma);
+                }
+            }
+
+            //cache.save(new File("cache.png"));
+        }
+
+        /**
+         * Formats current value and determines positions of digits
+         *
+         * @param renderSize Size of area to render to
+         * @return Layout of digits (null if area is too small)
+         */
+        private DisplayLayout computeLayout(Dimension renderSize) {
+
+            if (renderSize.height < 2 || renderSize.width < 2) {
+                return null;
+            }
+
             // Get value
             NumericRepresentation cn = input.getAutoLocked();
             Number number = cn.getNumericRepresentation();
@@ -344,25 +470,20 @@ public class LCD extends Widget {
 
             boolean warn = ((warnings == WarnOptions.LargerThan && cn.getNumericRepresentation().doubleValue() > warningThreshold) || (warnings == WarnOptions.SmallerThan && cn.getNumericRepresentation().doubleValue() < warningThreshold));
             releaseAllLocks();
-            Color background = warn ? lcdWarningBackground : lcdBackground;
-            cache.drawFilledRectangle(new Rectangle(renderSize), background.getRGB());
-            try {
-                updateColors(warn);
-            } catch (Exception e) {
-                Log.log(LogLevel.ERROR, this, e);
-            }
-            Rectangle firstBlock = new Rectangle(renderSize.width - blockWidth, (renderSize.height - blockHeight) / 2, blockWidth, blockHeight);
+
+            // determine positions of blocks and comma
+            DisplayLayout layout = new DisplayLayout(s, commaPos, warn, renderSize);
+            Rectangle block = new Rectangle(renderSize.width - blockWidth, (renderSize.height - blockHeight) / 2, blockWidth, blockHeight);
             for (int i = s.length() - 1; i >= 0; i--) {
-                renderBlock(cache, firstBlock, s.substring(i, i + 1));
-                firstBlock.x -= firstBlock.width * (1 + SPACING);
+                layout.blocks[i] = new Rectangle(block);
+                block.x -= block.width * (1 + SPACING);
                 if (i == commaPos) {
-                    firstBlock.x += firstBlock.width * (1 + SPACING) / 2 + 1;
-                    renderComma(cache, firstBlock);
-                    firstBlock.x -= firstBlock.width * (1 + SPACING) / 2 + 1;
+                    block.x += block.width * (1 + SPACING) / 2 + 1;
+                    layout.comma = new Rectangle(block);
+                    block.x -= block.width * (1 + SPACING) / 2 + 1;
                 }
             }
-
-            //cache.save(new File("cache.png"));
+            return layout;
         }
 
         private String formatNumber(CoreNumber num, int optimalLength) {
@@ -427,21 +548,23 @@ public class LCD extends Widget {
         }
 
         private String primaryFormat(double val, int optimalLength) {
-            String x = primaryFormat.format(val).replace(',', '.');
-            int c = x.contains(".") ? 1 : 0;
-            if (useScientificFormatOutOfRange) {
-                if (x.length() > optimalLength + c && optimalLength >= 5) {
-                    x = fallbackFormat.format(val).replace(',', '.');
-                    if (x.length() != optimalLength + 1) {
-                        int diff = (optimalLength + 1) - x.length();
-                        int frac = Math.max(1, fallbackFormat.getMinimumFractionDigits() + diff);
-                        fallbackFormat.setMinimumFractionDigits(frac);
-                        fallbackFormat.setMaximumFractionDigits(frac);
+            synchronized (primaryFormat) {
+                String x = primaryFormat.format(val).replace(',', '.');
+                int c = x.contains(".") ? 1 : 0;
+                if (useScientificFormatOutOfRange) {
+                    if (x.length() > optimalLength + c && optimalLength >= 5) {
                         x = fallbackFormat.format(val).replace(',', '.');
+                        if (x.length() != optimalLength + 1) {
+                            int diff = (optimalLength + 1) - x.length();
+                            int frac = Math.max(1, fallbackFormat.getMinimumFractionDigits() + diff);
+                            fallbackFormat.setMinimumFractionDigits(frac);
+                            fallbackFormat.setMaximumFractionDigits(frac);
+                            x = fallbackFormat.format(val).replace(',', '.');
+                        }
                     }
                 }
+                return x;
             }
-            return x;
         }
 
         public void renderBlock(BufferedImageRGB cache, Rectangle pos, String digit) {
@@ -465,4 +588,45 @@ public class LCD extends Widget {
         }
     }
 
+
+    /**
+     * Formatted value and positions of digits in LCD
+     */
+    private static class DisplayLayout {
+
+        /** Characters to display (one per block) */
+        private final String text;
+
+        /** Comma is rendered left of block with this index */
+        private final int commaPos;
+
+        /** Display warning colors? */
+        private final boolean warn;
+
+        /** Size of area that layout was calculated for */
+        private final Dimension renderSize;
+
+        /** Bounds of blocks */
+        private final Rectangle[] blocks;
+
+        /** Bounds of comma (null if there is none) */
+        private Rectangle comma;
+
+        private DisplayLayout(String text, int commaPos, boolean warn, Dimension renderSize) {
+            this.text = text;
+            this.commaPos = commaPos;
+            this.warn = warn;
+            this.renderSize = new Dimension(renderSize);
+            blocks = new Rectangle[text.length()];
+        }
+
+        /**
+         * @param other Other layout
+         * @return True if only characters differ - so that switching between the two layouts only requires redrawing the changed blocks
+         */
+        private boolean fitsTo(DisplayLayout other) {
+            return text.length() == other.text.length() && commaPos == other.commaPos && warn == other.warn && renderSize.equals(other.renderSize) &&
+                   (text.length() == 0 || blocks[0].equals(other.blocks[0]));
+        }
+    }
 }
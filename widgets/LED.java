@@ -139,7 +139,7 @@ public class LED extends Widget {
         }
     }
 
-    class LEDWidgetUI extends WidgetUI implements WidgetPortsListener {
+    class LEDWidgetUI extends WidgetUI implements WidgetPortsListener.Indexed {
 
         /** UID */
         private static final long serialVersionUID = 1667635834447207L;
@@ -165,7 +165,10 @@ public class LED extends Widget {
         }
 
         @Override
-        public void portChanged(WidgetPorts<?> origin, AbstractPort port, Object value) {
+        public void portChanged(WidgetPorts<?> origin, int index, AbstractPort port, Object value) {
+            if (index >= 0 && (value instanceof NumericRepresentation) && !signals.get(index).valueChanged((NumericRepresentation)value)) {
+                return;
+            }
             for (int i = 0; i < signals.size(); i++) {
                 LEDPanel pan = panels.get(i);
                 NumericRepresentation nr = signals.get(i).getAutoLocked();
@@ -189,7 +192,7 @@ public class LED extends Widget {
                 }
             }
             releaseAllLocks();
-            repaint();
+            scheduleRepaint();
         }
 
 
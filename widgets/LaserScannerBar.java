@@ -68,6 +68,7 @@ public class LaserScannerBar extends Widget {
 
         public LaserScannerBarUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
             inputFunction.addChangeListener(this);
         }
 
@@ -101,7 +102,7 @@ public class LaserScannerBar extends Widget {
         @Override
         public void portChanged(AbstractPort origin, Function value) {
             this.setChanged();
-            repaint();
+            scheduleRepaint();
         }
     }
 }
@@ -35,7 +35,6 @@ import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
-import javax.swing.SwingUtilities;
 
 import org.finroc.tools.gui.Widget;
 import org.finroc.tools.gui.WidgetInput;
@@ -48,6 +47,7 @@ import org.finroc.tools.gui.util.propertyeditor.PropertyList;
 
 import org.finroc.core.port.AbstractPort;
 import org.finroc.core.port.PortCreationInfo;
+import org.rrlib.serialization.NumericRepresentation;
 
 
 public class MultipleBars extends Widget {
@@ -92,7 +92,7 @@ public class MultipleBars extends Widget {
         public Color color = getDefaultColor(Theme.DefaultColor.LCD_ENABLED);
     }
 
-    class MultipleBarsUI extends WidgetUI implements WidgetPortsListener, ComponentListener, Runnable {
+    class MultipleBarsUI extends WidgetUI implements WidgetPortsListener.Indexed, ComponentListener, Runnable {
 
         /** UID */
         private static final long serialVersionUID = -6743184196516792815L;
@@ -120,8 +120,16 @@ public class MultipleBars extends Widget {
         }
 
         @Override
-        public void portChanged(WidgetPorts<?> origin, AbstractPort port, Object value) {
-            SwingUtilities.invokeLater(this);
+        public void portChanged(WidgetPorts<?> origin, int index, AbstractPort port, Object value) {
+            if (index >= 0) {
+                inputs.get(index).updateValueCache((NumericRepresentation)value); // cache listener of port is notified after this one
+            }
+            scheduleRepaint();
+        }
+
+        @Override
+        protected void updateForNextFrame() {
+            run();
         }
 
         @Override
@@ -145,6 +153,9 @@ public class MultipleBars extends Widget {
             // adjust number of ports
             inputs.setSize(bars.size());
             initPorts();
+            for (WidgetInput.Numeric input : inputs) {
+                input.enableValueCache();
+            }
 
             // set layouts and create bars
             barPanel.setLayout(new GridLayout(1, bars.size()));
@@ -168,7 +179,7 @@ public class MultipleBars extends Widget {
             }
 
             validate();
-            portChanged(null, null, null);
+            portChanged(null, -1, null, null);
         }
 
         public void componentHidden(ComponentEvent e) {}
@@ -24,11 +24,19 @@ package org.finroc.tools.gui.widgets;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
@@ -41,24 +49,23 @@ import org.finroc.tools.gui.WidgetPort;
 import org.finroc.tools.gui.WidgetPorts;
 import org.finroc.tools.gui.WidgetPortsListener;
 import org.finroc.tools.gui.WidgetUI;
+import org.finroc.tools.gui.commons.SamplingScheduler;
+import org.finroc.tools.gui.commons.fastdraw.BufferedImageRGB;
 import org.finroc.tools.gui.themes.Theme;
 import org.finroc.tools.gui.themes.Themes;
 import org.finroc.tools.gui.util.gui.RulerOfTheForest;
 import org.finroc.tools.gui.util.propertyeditor.PropertyList;
-import org.rrlib.finroc_core_utils.jc.thread.LoopThread;
 import org.rrlib.logging.Log;
 import org.rrlib.logging.LogLevel;
 
-import org.finroc.plugins.data_types.PartWiseLinearFunction;
 import org.rrlib.serialization.NumericRepresentation;
-import org.rrlib.serialization.rtti.DataType;
-import org.rrlib.serialization.rtti.DataTypeBase;
 import org.finroc.core.FrameworkElementFlags;
 import org.finroc.core.datatype.CoreNumber;
 import org.finroc.core.port.AbstractPort;
 import org.finroc.core.port.PortCreationInfo;
 import org.finroc.core.port.std.PortBase;
 import org.finroc.core.port.std.PortDataManager;
+import org.finroc.core.port.std.PortQueueFragmentRaw;
 
 public class Oscilloscope extends Widget {
 
@@ -74,7 +81,42 @@ public class Oscilloscope extends Widget {
     public PropertyList<OscilloscopeSignal> channels = new PropertyList<OscilloscopeSignal>(OscilloscopeSignal.class, 25);
     public long timerIntervalInMs = 100;
 
-    private static final double EPSILON = 0.0000001;
+    /** Expected maximum rate of incoming values (per signal) - used to bound input queues */
+    public double expectedSampleRateInHz = 1000;
+
+    /** What to do with values that exceed the bounded input queue */
+    public QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.dropOldest;
+
+    public static enum QueueOverflowPolicy { dropOldest, decimateByTwo }
+
+    /** How to place values on time axis (values received in one sampling cycle are spread evenly by default) */
+    public SamplePlacement samplePlacement = SamplePlacement.evenlySpaced;
+
+    public static enum SamplePlacement { evenlySpaced, timestamps }
+
+    /** Minimum and maximum number of samples stored per channel (see getSampleBufferCapacity()) */
+    private static final int MIN_SAMPLE_BUFFER_CAPACITY = 16384, MAX_SAMPLE_BUFFER_CAPACITY = 1 << 21;
+
+    /** Number of levels in history pyramid (level n aggregates 4^n samples per entry) and number of entries per level */
+    private static final int HISTORY_LEVELS = 8, HISTORY_LEVEL_CAPACITY = 8192;
+
+    /** Minimum time span (in ms) that can be displayed in history view */
+    private static final double MIN_HISTORY_SPAN = 10;
+
+    /** Factor that displayed time span changes by per mouse wheel step in history view */
+    private static final double HISTORY_ZOOM_FACTOR = 1.25;
+
+    /** Minimum number of values that are processed per signal and sampling cycle */
+    private static final int MIN_QUEUE_BOUND = 16;
+
+    /** Differences (in ms) between observed and estimated clock offset that cause estimate to be reset */
+    private static final double CLOCK_OFFSET_RESET_THRESHOLD = 5000;
+
+    /** Rate at which estimated clock offset adapts to larger observed offsets (per sampling cycle) */
+    private static final double CLOCK_OFFSET_ADAPTION = 0.01;
+
+    /** Number of values that were dropped because of queue overflows or full sample buffers */
+    private transient volatile long droppedSamples;
 
     public Oscilloscope() {
         channels.add(new OscilloscopeSignal());
@@ -94,12 +136,38 @@ public class Oscilloscope extends Widget {
     protected PortCreationInfo getPortCreationInfo(PortCreationInfo suggestion, WidgetPort<?> forPort) {
         if (signals != null && signals.contains(forPort)) {
             PortCreationInfo info = suggestion.derive(suggestion.flags | FrameworkElementFlags.HAS_QUEUE | FrameworkElementFlags.USES_QUEUE);
-            info.maxQueueSize = -1;
+            info.maxQueueSize = 2 * getQueueBound();
             return info;
         }
         return suggestion;
     }
 
+    /**
+     * @return Maximum number of values processed per signal and sampling cycle
+     * (values that can be displayed in one sweep at the expected sample rate).
+     * Port queues are bounded to twice this value - older values are dropped by the port.
+     */
+    public int getQueueBound() {
+        return (int)Math.max(MIN_QUEUE_BOUND, Math.min(Integer.MAX_VALUE / 2, Math.ceil(timeScaleMaxInMs * expectedSampleRateInHz / 1000)));
+    }
+
+    /**
+     * @return Maximum number of samples stored per channel
+     * (twice the samples displayed in one sweep at the expected sample rate - limited to MAX_SAMPLE_BUFFER_CAPACITY).
+     * If a sweep contains more samples, its oldest samples are dropped (and counted in getDroppedSampleCount()).
+     */
+    public int getSampleBufferCapacity() {
+        double samplesPerSweep = Math.ceil(timeScaleMaxInMs * expectedSampleRateInHz / 1000);
+        return (int)Math.max(MIN_SAMPLE_BUFFER_CAPACITY, Math.min(MAX_SAMPLE_BUFFER_CAPACITY, 2 * samplesPerSweep));
+    }
+
+    /**
+     * @return Number of values that were dropped by oscilloscope because of queue overflows or full sample buffers
+     */
+    public long getDroppedSampleCount() {
+        return droppedSamples;
+    }
+
     public static class OscilloscopeSignal implements Serializable {
 
         /** UID */
@@ -111,6 +179,9 @@ public class Oscilloscope extends Widget {
         public DrawMode drawMode = DrawMode.lines;
         public Scale useScale = Scale.left;
         public Color color = getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_FOREGROUND);
+
+        /** Keep long-term history of signal (can be viewed by zooming out with mouse wheel) */
+        public boolean keepHistory = false;
     }
 
     class OscilloscopeUI extends WidgetUI implements WidgetPortsListener {
@@ -123,9 +194,22 @@ public class Oscilloscope extends Widget {
         OscilloscopeMainPanel main;
         boolean skip;
         List<OscilloscopeFunction> functions = new ArrayList<OscilloscopeFunction>();
+
+        /** History of each channel (null for channels that do not keep history) - synchronized with functions */
+        List<HistoryPyramid> histories = new ArrayList<HistoryPyramid>();
         JLabel label = new JLabel();
 
-        OscilloscopeThread thread;
+        /** Task that samples signals periodically */
+        SamplingTask samplingTask = new SamplingTask();
+
+        /** Handle of scheduled sampling task */
+        ScheduledFuture<?> samplingFuture;
+
+        /** Period that sampling task is scheduled with */
+        long samplingPeriod;
+
+        /** Current result of getQueueBound() */
+        int queueBound;
 
         public OscilloscopeUI() {
             super(RenderMode.Swing, TRAIT_DISPLAYS_LABEL | TRAIT_REQUIRES_BORDER_IN_DARK_COLORING);
@@ -151,11 +235,6 @@ public class Oscilloscope extends Widget {
             main = new OscilloscopeMainPanel();
             add(main, BorderLayout.CENTER);
 
-            // create thread
-            thread = new OscilloscopeThread();
-            thread.start();
-            Log.log(LogLevel.DEBUG, this, "Oscilloscope Thread started.");
-
             signals.addChangeListener(this);
             widgetPropertiesChanged();
         }
@@ -163,7 +242,7 @@ public class Oscilloscope extends Widget {
         @Override
         public void portChanged(WidgetPorts<?> origin, AbstractPort port, Object value) {
             this.setChanged();
-            repaint();
+            scheduleRepaint();
         }
 
         @Override
@@ -181,16 +260,44 @@ public class Oscilloscope extends Widget {
             bottom.setMinAndMax(0, timeScaleMaxInMs);
             left.setMinAndMax(leftScaleMin, leftScaleMax);
             right.setMinAndMax(rightScaleMin, rightScaleMax);
-            thread.setCycleTime(timerIntervalInMs);
+            main.invalidateGrid();
+            if (samplingFuture == null || samplingPeriod != timerIntervalInMs) {
+                if (samplingFuture != null) {
+                    samplingFuture.cancel(false);
+                }
+                samplingPeriod = timerIntervalInMs;
+                samplingFuture = SamplingScheduler.schedule(samplingTask, samplingPeriod);
+            }
             synchronized (functions) {
                 signals.setSize(channels.size());
                 initPorts();
+                queueBound = getQueueBound();
+                for (WidgetInput.Numeric signal : signals) {
+                    signal.getPort().setMaxQueueLength(2 * queueBound);
+                }
+                int capacity = getSampleBufferCapacity();
+                for (OscilloscopeFunction function : functions) {
+                    function.setCapacity(capacity);
+                }
                 while (functions.size() < channels.size()) {
-                    functions.add(new OscilloscopeFunction());
+                    functions.add(new OscilloscopeFunction(capacity));
                 }
                 while (functions.size() > channels.size()) {
                     functions.remove(functions.size() - 1);
                 }
+                while (histories.size() < channels.size()) {
+                    histories.add(null);
+                }
+                while (histories.size() > channels.size()) {
+                    histories.remove(histories.size() - 1);
+                }
+                for (int i = 0; i < channels.size(); i++) {
+                    if (!channels.get(i).keepHistory) {
+                        histories.set(i, null);
+                    } else if (histories.get(i) == null) {
+                        histories.set(i, new HistoryPyramid());
+                    }
+                }
             }
 
             if (Themes.nimbusLookAndFeel()) {
@@ -224,66 +331,227 @@ public class Oscilloscope extends Widget {
             }
         }
 
-        class OscilloscopeThread extends LoopThread {
+        @Override
+        protected void dispose() {
+            if (samplingFuture != null) {
+                samplingFuture.cancel(false);
+                samplingFuture = null;
+            }
+        }
+
+        /**
+         * Samples signals - executed periodically by shared SamplingScheduler
+         */
+        class SamplingTask implements Runnable {
 
             long startTime, lastTime;
-            ArrayList<PortDataManager> dequeuedValues = new ArrayList<PortDataManager>();
 
-            public OscilloscopeThread() {
-                super(timerIntervalInMs, false);
+            /** Reused fragment for dequeueing all values of a port queue at once */
+            PortQueueFragmentRaw dequeued = new PortQueueFragmentRaw();
+
+            /** Values and timestamps of current batch (dequeued from one port) */
+            double[] batchValues = new double[MIN_QUEUE_BOUND];
+            long[] batchTimestamps = new long[MIN_QUEUE_BOUND];
+
+            /** Estimated offset (local time - timestamp) of each signal's source clock (NaN if unknown) */
+            double[] clockOffsets = new double[0];
+
+            public SamplingTask() {
                 startTime = System.currentTimeMillis();
                 lastTime = startTime;
             }
 
             @Override
-            public void mainLoopCallback() throws Exception {
-                if (!isVisible()) {
-                    stopLoop(); // disposed
-                    Log.log(LogLevel.DEBUG, this, "Oscilloscope Thread stopped.");
-                    return;
-                }
-
+            public void run() {
                 try {
                     synchronized (functions) {
                         long time = System.currentTimeMillis();
+                        if (clockOffsets.length != functions.size()) {
+                            clockOffsets = new double[functions.size()];
+                            Arrays.fill(clockOffsets, Double.NaN);
+                        }
                         for (int i = 0; i < functions.size(); i++) {
-                            dequeuedValues.clear();
-                            PortDataManager dequeued = null;
-                            while ((dequeued = ((PortBase)signals.get(i).getPort()).dequeueSingleAutoLockedRaw()) != null) {
-                                dequeuedValues.add(dequeued);
-                            }
-                            if (dequeuedValues.size() > 0) {
-                                // TODO: We could use timestamps attached to values if available - however, this would make things a lot more complex
-                                double timestep = (time - lastTime) / ((double)dequeuedValues.size());
-                                //System.out.println("Received " + dequeuedValues.size() + " values - timestep " + timestep);
-                                double lastValueTime = lastTime;
-                                for (int j = 0; j < dequeuedValues.size(); j++) {
-                                    double valueTime = lastTime + (j + 1) * timestep;
-                                    // TODO: an implementation without EPSILON should be possible - and would be cleaner
-                                    functions.get(i).addNewValue((valueTime - startTime) % timeScaleMaxInMs, ((NumericRepresentation)dequeuedValues.get(j).getObject().getData()).getNumericRepresentation().doubleValue(), (lastValueTime - startTime + EPSILON) % timeScaleMaxInMs);
-                                    lastValueTime = valueTime;
+                            OscilloscopeFunction function = functions.get(i);
+                            int n = dequeueBatch(signals.get(i));
+                            if (n > 0) {
+
+                                // apply overflow policy: process every step-th value starting with index 'start' (newest value is always processed)
+                                int start = 0, step = 1;
+                                if (n > queueBound) {
+                                    if (queueOverflowPolicy == QueueOverflowPolicy.decimateByTwo) {
+                                        while ((n - 1) / step + 1 > queueBound) {
+                                            step *= 2;
+                                        }
+                                        start = (n - 1) % step;
+                                    } else {
+                                        start = n - queueBound;
+                                    }
+                                }
+                                int processed = (n - 1 - start) / step + 1;
+                                if (processed < n) {
+                                    droppedSamples += n - processed; // only written by sampling thread
+                                }
+
+                                if (samplePlacement == SamplePlacement.timestamps && batchTimestamps[n - 1] != 0) {
+
+                                    // place values at their (source) timestamps - translated to local time
+                                    double offset = updateClockOffset(i, time - batchTimestamps[n - 1]);
+                                    double newest = function.size() > 0 ? function.getTime(function.size() - 1) : Double.NEGATIVE_INFINITY;
+                                    for (int j = start; j < n; j += step) {
+                                        double valueTime = Math.min(time - startTime, Math.max(newest, batchTimestamps[j] + offset - startTime));
+                                        addSample(i, valueTime, batchValues[j]);
+                                        newest = valueTime;
+                                    }
+                                } else {
+
+                                    // spread values evenly over time since last sampling
+                                    double timestep = (time - lastTime) / ((double)processed);
+                                    for (int j = start, k = 1; j < n; j += step, k++) {
+                                        double valueTime = lastTime + k * timestep;
+                                        addSample(i, valueTime - startTime, batchValues[j]);
+                                    }
                                 }
                             } else {
-                                functions.get(i).addNewValue((time - startTime) % timeScaleMaxInMs, signals.get(i).getDouble(), (lastTime - startTime + EPSILON) % timeScaleMaxInMs);
+                                addSample(i, time - startTime, signals.get(i).getDouble());
                             }
                             releaseAllLocks();
                         }
                         lastTime = time;
                     }
-                    main.repaint();
+                    scheduleRepaint();
                 } catch (Exception e) {
-                    Log.log(LogLevel.DEBUG_WARNING, this, "Oscilloscope Thread skipped loop, because of temporary exception");
+                    Log.log(LogLevel.DEBUG_WARNING, this, "Oscilloscope sampling skipped, because of temporary exception");
+                }
+            }
+
+            /**
+             * Adds sample to channel (and its history)
+             *
+             * @param channelIndex Index of channel
+             * @param time Time of sample (in ms since oscilloscope start)
+             * @param value Value of sample
+             */
+            private void addSample(int channelIndex, double time, double value) {
+                functions.get(channelIndex).addNewValue(time, value);
+                HistoryPyramid history = histories.get(channelIndex);
+                if (history != null) {
+                    history.add(time, value);
                 }
             }
+
+            /**
+             * Dequeues all values from signal's port queue into batchValues and batchTimestamps
+             *
+             * @param signal Signal to dequeue values of
+             * @return Number of dequeued values
+             */
+            private int dequeueBatch(WidgetInput.Numeric signal) {
+                ((PortBase)signal.getPort()).dequeueAllRaw(dequeued);
+                int n = 0;
+                PortDataManager value = null;
+                try {
+                    while ((value = dequeued.dequeueUnsafe()) != null) {
+                        if (n == batchValues.length) {
+                            batchValues = Arrays.copyOf(batchValues, n * 2);
+                            batchTimestamps = Arrays.copyOf(batchTimestamps, n * 2);
+                        }
+                        batchValues[n] = ((NumericRepresentation)value.getObject().getData()).getNumericRepresentation().doubleValue();
+                        batchTimestamps[n] = value.getTimestamp().longValue();
+                        value.releaseLock();
+                        value = null;
+                        n++;
+                    }
+                } finally {
+
+                    // release locks of values not processed (if an exception occurred)
+                    if (value != null) {
+                        value.releaseLock();
+                    }
+                    while ((value = dequeued.dequeueUnsafe()) != null) {
+                        value.releaseLock();
+                    }
+                }
+                return n;
+            }
+
+            /**
+             * Updates estimated clock offset of signal's source.
+             *
+             * The estimate follows the minimum observed offset (which has the lowest transport delay) immediately
+             * and slowly adapts to larger offsets (clock drift). If the observed offset is far off
+             * (e.g. because port was connected to another source), the estimate is reset.
+             *
+             * @param signalIndex Index of signal
+             * @param observedOffset Offset observed for newest value (local receive time - value timestamp)
+             * @return New estimate
+             */
+            private double updateClockOffset(int signalIndex, double observedOffset) {
+                double offset = clockOffsets[signalIndex];
+                if (Double.isNaN(offset) || observedOffset < offset || observedOffset - offset > CLOCK_OFFSET_RESET_THRESHOLD) {
+                    offset = observedOffset;
+                } else {
+                    offset += (observedOffset - offset) * CLOCK_OFFSET_ADAPTION;
+                }
+                clockOffsets[signalIndex] = offset;
+                return offset;
+            }
         }
 
-        class OscilloscopeMainPanel extends JPanel {
+        class OscilloscopeMainPanel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
 
             /** UID */
             private static final long serialVersionUID = -2946030738495285342L;
 
+            /** Margin (in pixels) that is redrawn around sweep band */
+            private static final int BAND_MARGIN = 2;
+
+            /** Cached background with scale lines */
+            private BufferedImageRGB grid;
+
+            /** Grid with traces - only the band passed by the sweep since last paint is redrawn */
+            private BufferedImageRGB traces;
+
+            /** Is grid up to date? (grid needs to be redrawn after scale or theme changes) */
+            private boolean gridValid;
+
+            /** Colors that grid was drawn with */
+            private Color gridBackground, gridScale, gridScaleMajor;
+
+            /** Tick versions of rulers that grid was drawn with (rulers may update their ticks after this panel was painted) */
+            private int gridBottomTicks = -1, gridLeftTicks = -1, gridRightTicks = -1;
+
+            /** Traces have been rendered up to this time (in ms since oscilloscope start) - NaN if traces need to be redrawn completely */
+            private double renderedUntil = Double.NaN;
+
+            /** Is history displayed (instead of sweep)? */
+            private boolean historyView;
+
+            /** Time span (in ms) displayed in history view */
+            private double historySpan;
+
+            /** End of time span displayed in history view (in ms since oscilloscope start) - NaN to follow newest sample */
+            private double historyViewEnd = Double.NaN;
+
+            /** Range that bottom ruler was last set to in history view (NaN if it needs to be set) */
+            private double rulerMin = Double.NaN, rulerMax = Double.NaN;
+
+            /** Last x coordinate of mouse while dragging */
+            private int dragX;
+
             public OscilloscopeMainPanel() {
                 setBackground(getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_BACKGROUND));
+                addMouseListener(this);
+                addMouseMotionListener(this);
+                addMouseWheelListener(this);
+            }
+
+            /**
+             * Grid and traces will be redrawn completely on next paint
+             */
+            public void invalidateGrid() {
+                gridValid = false;
+                rulerMin = Double.NaN;
+                rulerMax = Double.NaN;
             }
 
             @Override
@@ -291,61 +559,414 @@ public class Oscilloscope extends Widget {
                 if (skip) {
                     return;
                 }
+                int width = getWidth();
+                int height = getHeight();
+                if (width <= 0 || height <= 0) {
+                    return;
+                }
+
+                // (re)render grid?
+                Color scale = getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_SCALE);
+                Color scaleMajor = getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_SCALE_MAJOR);
+                boolean ticksChanged = bottom.getTicksVersion() != gridBottomTicks || left.getTicksVersion() != gridLeftTicks || right.getTicksVersion() != gridRightTicks;
+                if (!gridValid || grid == null || grid.getWidth() != width || grid.getHeight() != height || ticksChanged ||
+                        !getBackground().equals(gridBackground) || !scale.equals(gridScale) || !scaleMajor.equals(gridScaleMajor)) {
+                    if (grid == null || grid.getWidth() != width || grid.getHeight() != height) {
+                        grid = new BufferedImageRGB(width, height);
+                        traces = new BufferedImageRGB(width, height);
+                    }
+                    gridBackground = getBackground();
+                    gridScale = scale;
+                    gridScaleMajor = scaleMajor;
+                    gridBottomTicks = bottom.getTicksVersion();
+                    gridLeftTicks = left.getTicksVersion();
+                    gridRightTicks = right.getTicksVersion();
+                    renderGrid();
+                    gridValid = true;
+                    renderedUntil = Double.NaN;
+                }
+
+                // draw functions
+                synchronized (functions) {
+                    if (historyView) {
+                        renderHistory();
+                        renderedUntil = Double.NaN;
+                    } else {
+                        double now = Double.NaN;
+                        double bandEnd = Double.NaN;
+                        boolean modeChanged = false;
+                        for (int i = 0; i < functions.size(); i++) {
+                            OscilloscopeFunction function = functions.get(i);
+                            modeChanged |= (function.size() > width) != function.drawnAsEnvelope;
+                            if (function.size() > 0) {
+                                now = Double.isNaN(now) ? function.getTime(function.size() - 1) : Math.max(now, function.getTime(function.size() - 1));
+
+                                // samples that have been dropped were drawn at the x coordinates before oldest sample
+                                bandEnd = Double.isNaN(bandEnd) ? function.getTime(0) + timeScaleMaxInMs : Math.max(bandEnd, function.getTime(0) + timeScaleMaxInMs);
+                            }
+                        }
+                        bandEnd = Math.min(Math.max(now, bandEnd), renderedUntil + timeScaleMaxInMs);
+
+                        Graphics2D g2d = traces.getBufferedImage().createGraphics();
+                        if (modeChanged || Double.isNaN(now) || Double.isNaN(renderedUntil) || now < renderedUntil || bandEnd - renderedUntil >= timeScaleMaxInMs) {
+                            redrawBand(g2d, 0, width, Double.NaN, Double.NaN);
+                        } else if (now > renderedUntil) {
+                            long startSweep = (long)Math.floor(renderedUntil / timeScaleMaxInMs);
+                            long endSweep = (long)Math.floor(bandEnd / timeScaleMaxInMs);
+                            int x0 = (int)Math.floor(getXCord(renderedUntil - startSweep * timeScaleMaxInMs)) - BAND_MARGIN;
+                            int x1 = (int)Math.ceil(getXCord(bandEnd - endSweep * timeScaleMaxInMs)) + BAND_MARGIN + 1;
+                            if (startSweep == endSweep) {
+                                redrawBand(g2d, x0, x1, renderedUntil, bandEnd);
+                            } else {
+                                redrawBand(g2d, x0, width, renderedUntil, bandEnd);
+                                redrawBand(g2d, 0, x1, renderedUntil, bandEnd);
+                            }
+                        }
+                        g2d.dispose();
+                        renderedUntil = now;
+                    }
+                }
+                g.drawImage(traces.getBufferedImage(), 0, 0, null);
+
+                // show number of dropped samples (if any)
+                long dropped = droppedSamples;
+                if (dropped > 0) {
+                    String text = dropped + " samples dropped";
+                    FontMetrics metrics = g.getFontMetrics();
+                    g.setColor(getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_FOREGROUND));
+                    g.drawString(text, width - metrics.stringWidth(text) - 4, metrics.getAscent() + 2);
+                }
+            }
+
+            /**
+             * Renders history of all channels that keep history to traces image
+             */
+            private void renderHistory() {
+                int width = traces.getWidth();
+                int height = traces.getHeight();
+                double newest = getHistoryNewest();
+                double end = Double.isNaN(historyViewEnd) ? newest : historyViewEnd;
+                double start = end - historySpan;
+                if (!Double.isNaN(newest) && (start - newest != rulerMin || end - newest != rulerMax)) {
+                    rulerMin = start - newest;
+                    rulerMax = end - newest;
+                    bottom.setMinAndMax(rulerMin, rulerMax);
+                    scheduleRepaint(); // grid is redrawn once bottom ruler has updated its ticks
+                }
+                System.arraycopy(grid.getBuffer(), 0, traces.getBuffer(), 0, width * height);
+                if (Double.isNaN(newest)) {
+                    return;
+                }
+
+                Graphics2D g2d = traces.getBufferedImage().createGraphics();
+                g2d.setClip(0, 0, width, height);
+                for (int i = 0; i < histories.size(); i++) {
+                    HistoryPyramid history = histories.get(i);
+                    if (history != null) {
+                        OscilloscopeSignal channel = channels.get(i);
+                        g2d.setColor(channel.color);
+                        drawHistory(g2d, history, start, end, channel.useScale.equals(OscilloscopeSignal.Scale.left), channel.drawMode.equals(OscilloscopeSignal.DrawMode.lines));
+                    }
+                }
+                g2d.dispose();
+            }
+
+            /**
+             * Draws history of channel: One vertical min/max line per entry of pyramid level that matches current resolution
+             * (plus connections between means in line mode)
+             *
+             * @param g2d Graphics to draw to
+             * @param history History to draw
+             * @param start Start of displayed time span (in ms since oscilloscope start)
+             * @param end End of displayed time span (in ms since oscilloscope start)
+             * @param leftScale Does channel use left scale?
+             * @param lines Connect entries?
+             */
+            private void drawHistory(Graphics2D g2d, HistoryPyramid history, double start, double end, boolean leftScale, boolean lines) {
+                double xScale = getWidth() / (end - start);
+                int level = history.selectLevel(start, end, 2 * getWidth());
+                int xlast = 0, ylast = 0;
+                boolean connect = false;
+
+                // newest samples have not been aggregated to selected level yet - they are taken from finer levels
+                boolean pastEnd = false;
+                for (int l = level; l >= 0 && !pastEnd; l--) {
+                    HistoryLevel entries = history.levels[l];
+                    int from = (l == level) ? Math.max(0, entries.findIndex(start) - 1) : entries.size() - history.pendingCount[l];
+                    for (int j = from, n = entries.size(); j < n; j++) {
+                        double time = entries.getTime(j);
+                        int x = (int)Math.round((time - start) * xScale);
+                        int ymean = (int)Math.round(getYCord(entries.getMean(j), leftScale));
+                        g2d.drawLine(x, (int)Math.round(getYCord(entries.getMax(j), leftScale)), x, (int)Math.round(getYCord(entries.getMin(j), leftScale)));
+                        if (connect) {
+                            g2d.drawLine(xlast, ylast, x, ymean);
+                        }
+                        xlast = x;
+                        ylast = ymean;
+                        connect = lines;
+                        if (time > end) {
+                            pastEnd = true; // entries in finer levels are even newer
+                            break;
+                        }
+                    }
+                }
+            }
+
+            /**
+             * @return Time of newest sample in any history (in ms since oscilloscope start) - NaN if there is none
+             */
+            private double getHistoryNewest() {
+                double newest = Double.NaN;
+                for (HistoryPyramid history : histories) {
+                    if (history != null && !Double.isNaN(history.newest)) {
+                        newest = Double.isNaN(newest) ? history.newest : Math.max(newest, history.newest);
+                    }
+                }
+                return newest;
+            }
+
+            /**
+             * @return Time of oldest sample in any history (in ms since oscilloscope start) - NaN if there is none
+             */
+            private double getHistoryOldest() {
+                double oldest = Double.NaN;
+                for (HistoryPyramid history : histories) {
+                    if (history != null && !Double.isNaN(history.getOldest())) {
+                        oldest = Double.isNaN(oldest) ? history.getOldest() : Math.min(oldest, history.getOldest());
+                    }
+                }
+                return oldest;
+            }
+
+            /**
+             * Sets end of time span displayed in history view
+             *
+             * @param end End of time span (in ms since oscilloscope start) - view follows newest sample if this is not before it
+             * @param newest Time of newest sample
+             */
+            private void setHistoryViewEnd(double end, double newest) {
+                end = Math.max(end, getHistoryOldest() + historySpan);
+                historyViewEnd = (end >= newest) ? Double.NaN : end;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                synchronized (functions) {
+                    double newest = getHistoryNewest();
+                    if (Double.isNaN(newest) || getWidth() <= 0) {
+                        return;
+                    }
+                    if (!historyView) {
+                        historyView = true;
+                        historySpan = timeScaleMaxInMs;
+                        historyViewEnd = Double.NaN;
+                    }
+
+                    // zoom around time at mouse position
+                    double end = Double.isNaN(historyViewEnd) ? newest : historyViewEnd;
+                    double relX = Math.max(0, Math.min(1, e.getX() / (double)getWidth()));
+                    double anchor = end - (1 - relX) * historySpan;
+                    double maxSpan = Math.max(timeScaleMaxInMs, newest - getHistoryOldest());
+                    historySpan = Math.max(MIN_HISTORY_SPAN, Math.min(maxSpan, historySpan * Math.pow(HISTORY_ZOOM_FACTOR, e.getWheelRotation())));
+                    setHistoryViewEnd(anchor + (1 - relX) * historySpan, newest);
+                }
+                repaint();
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (!historyView || getWidth() <= 0) {
+                    return;
+                }
+                synchronized (functions) {
+                    double newest = getHistoryNewest();
+                    if (!Double.isNaN(newest)) {
+                        double end = Double.isNaN(historyViewEnd) ? newest : historyViewEnd;
+                        setHistoryViewEnd(end - (e.getX() - dragX) * historySpan / getWidth(), newest);
+                    }
+                }
+                dragX = e.getX();
+                repaint();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (historyView && e.getClickCount() == 2) {
+
+                    // back to sweep
+                    historyView = false;
+                    bottom.setMinAndMax(0, timeScaleMaxInMs);
+                    invalidateGrid();
+                    repaint();
+                }
+            }
 
-                super.paintComponent(g);
-                Graphics2D g2d = (Graphics2D)g.create();
-                g2d.setClip(0, 0, getWidth(), getHeight());
+            @Override
+            public void mouseReleased(MouseEvent e) {}
+
+            @Override
+            public void mouseEntered(MouseEvent e) {}
+
+            @Override
+            public void mouseExited(MouseEvent e) {}
+
+            @Override
+            public void mouseMoved(MouseEvent e) {}
+
+            /**
+             * Renders background and scale lines to grid
+             */
+            private void renderGrid() {
+                grid.fill(gridBackground.getRGB());
+                Graphics2D g2d = grid.getBufferedImage().createGraphics();
+                int width = grid.getWidth();
+                int height = grid.getHeight();
 
                 // Minor lines
-                g2d.setColor(getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_SCALE));
+                g2d.setColor(gridScale);
                 for (Integer i : bottom.getMinorTicks()) {
-                    g2d.drawLine(i, 0, i, getHeight() - 1);
+                    g2d.drawLine(i, 0, i, height - 1);
                 }
                 for (Integer i : right.getMinorTicks()) {
-                    g2d.drawLine(0, getHeight() - i - 1, getWidth() - 1, getHeight() - i - 1);
+                    g2d.drawLine(0, height - i - 1, width - 1, height - i - 1);
                 }
                 for (Integer i : left.getMinorTicks()) {
-                    g2d.drawLine(0, getHeight() - i - 1, getWidth() - 1, getHeight() - i - 1);
+                    g2d.drawLine(0, height - i - 1, width - 1, height - i - 1);
                 }
 
                 // Vertical major lines
-                g2d.setColor(getDefaultColor(Theme.DefaultColor.OSCILLOSCOPE_SCALE_MAJOR));
+                g2d.setColor(gridScaleMajor);
                 for (Integer i : bottom.getMajorTicks()) {
-                    g2d.drawLine(i, 0, i, getHeight() - 1);
+                    g2d.drawLine(i, 0, i, height - 1);
                 }
                 for (Integer i : right.getMajorTicks()) {
-                    g2d.drawLine(0, getHeight() - i - 1, getWidth() - 1, getHeight() - i - 1);
+                    g2d.drawLine(0, height - i - 1, width - 1, height - i - 1);
                 }
                 for (Integer i : left.getMajorTicks()) {
-                    g2d.drawLine(0, getHeight() - i - 1, getWidth() - 1, getHeight() - i - 1);
+                    g2d.drawLine(0, height - i - 1, width - 1, height - i - 1);
                 }
+                g2d.dispose();
+            }
 
-                // draw functions
-                synchronized (functions) {
-                    for (int i = 0; i < functions.size(); i++) {
-                        List<PartWiseLinearFunction.Node> nodes = functions.get(i).getNodeList();
-                        g2d.setColor(channels.get(i).color);
-
-                        PartWiseLinearFunction.Node last = null;
-                        boolean left = channels.get(i).useScale.equals(OscilloscopeSignal.Scale.left);
-                        for (PartWiseLinearFunction.Node node : nodes) {
-                            int xnow = (int)Math.round(getXCord(node.x));
-                            int ynow = (int)Math.round(getYCord(node.y, left));
-                            if (channels.get(i).drawMode.equals(OscilloscopeSignal.DrawMode.lines)) {
-                                if (last != null) {
-                                    int xlast = (int)Math.round(getXCord(last.x));
-                                    int ylast = (int)Math.round(getYCord(last.y, left));
-                                    g2d.drawLine(xlast, ylast, xnow, ynow);
-                                }
-                                last = node;
-                                if (node.x == functions.get(i).curTime) {
-                                    last = null;
-                                }
-                            } else {
-                                g2d.drawLine(xnow, ynow, xnow, ynow);
-                            }
+            /**
+             * Restores grid in band of traces image and redraws all traces in this band
+             *
+             * @param g2d Graphics of traces image
+             * @param x0 First x coordinate of band
+             * @param x1 Last x coordinate of band + 1
+             * @param fromTime Band starts at sweep position of this time (NaN to draw all samples)
+             * @param toTime Band ends at sweep position of this time
+             */
+            private void redrawBand(Graphics2D g2d, int x0, int x1, double fromTime, double toTime) {
+                int width = traces.getWidth();
+                x0 = Math.max(0, x0);
+                x1 = Math.min(width, x1);
+                if (x1 <= x0) {
+                    return;
+                }
+                int[] src = grid.getBuffer();
+                int[] dest = traces.getBuffer();
+                for (int y = 0, offset = x0, n = traces.getHeight(); y < n; y++, offset += width) {
+                    System.arraycopy(src, offset, dest, offset, x1 - x0);
+                }
+                g2d.setClip(x0, 0, x1 - x0, traces.getHeight());
+
+                double margin = (BAND_MARGIN + 2) * timeScaleMaxInMs / width;
+                for (int i = 0; i < functions.size(); i++) {
+                    OscilloscopeFunction function = functions.get(i);
+                    OscilloscopeSignal channel = channels.get(i);
+                    g2d.setColor(channel.color);
+
+                    boolean left = channel.useScale.equals(OscilloscopeSignal.Scale.left);
+                    boolean lines = channel.drawMode.equals(OscilloscopeSignal.DrawMode.lines);
+                    function.drawnAsEnvelope = function.size() > width;
+                    if (function.drawnAsEnvelope) {
+                        drawEnvelope(g2d, function, left, lines, x0, x1);
+                        continue;
+                    }
+                    function.invalidateEnvelope();
+                    if (Double.isNaN(fromTime)) {
+                        drawSamples(g2d, function, 0, function.size(), left, lines);
+                    } else {
+                        // samples in band are from current and (older ones) from previous sweep
+                        int previousEnd = Math.min(function.size(), function.findIndex(toTime + margin - timeScaleMaxInMs) + 1);
+                        int currentStart = Math.max(Math.max(0, previousEnd - 1), function.findIndex(fromTime - margin) - 1);
+                        drawSamples(g2d, function, 0, previousEnd, left, lines);
+                        drawSamples(g2d, function, currentStart, function.size(), left, lines);
+                    }
+                }
+            }
+
+            /**
+             * Draws range of samples
+             *
+             * @param g2d Graphics to draw to
+             * @param function Channel samples
+             * @param from Index of first sample to draw
+             * @param to Index after last sample to draw
+             * @param leftScale Does channel use left scale?
+             * @param lines Connect samples?
+             */
+            private void drawSamples(Graphics2D g2d, OscilloscopeFunction function, int from, int to, boolean leftScale, boolean lines) {
+                int width = getWidth();
+                int xlast = 0, ylast = 0;
+                long lastSweep = 0;
+                for (int j = from; j < to; j++) {
+                    double time = function.getTime(j);
+                    long sweep = (long)Math.floor(time / timeScaleMaxInMs);
+                    int xnow = (int)Math.round(getXCord(time - sweep * timeScaleMaxInMs));
+                    int ynow = (int)Math.round(getYCord(function.getValue(j), leftScale));
+                    if (!lines) {
+                        g2d.drawLine(xnow, ynow, xnow, ynow);
+                    } else if (j > from && sweep == lastSweep) {
+                        g2d.drawLine(xlast, ylast, xnow, ynow);
+                    } else if (j > from && sweep == lastSweep + 1) {
+                        // segment crosses right border: draw both halves (clipped)
+                        g2d.drawLine(xlast, ylast, xnow + width, ynow);
+                        g2d.drawLine(xlast - width, ylast, xnow, ynow);
+                    }
+                    xlast = xnow;
+                    ylast = ynow;
+                    lastSweep = sweep;
+                }
+            }
+
+            /**
+             * Draws channel with more samples than pixel columns:
+             * One vertical min/max line per pixel column (plus connection to previous column in line mode)
+             *
+             * @param g2d Graphics to draw to
+             * @param function Channel samples
+             * @param leftScale Does channel use left scale?
+             * @param lines Connect columns?
+             * @param x0 First column to draw
+             * @param x1 Last column to draw + 1
+             */
+            private void drawEnvelope(Graphics2D g2d, OscilloscopeFunction function, boolean leftScale, boolean lines, int x0, int x1) {
+                function.updateEnvelope(getWidth());
+                int ylast = 0;
+                boolean connect = false;
+                // connector to column x1 covers pixels in column x1 - 1
+                for (int x = Math.max(0, x0 - 1), n = Math.min(x1 + 1, function.envelopeColumns); x < n; x++) {
+                    if (Double.isNaN(function.columnMin[x])) {
+                        connect = false;
+                        continue;
+                    }
+                    if (x >= x0) {
+                        int ymin = (int)Math.round(getYCord(function.columnMin[x], leftScale));
+                        int ymax = (int)Math.round(getYCord(function.columnMax[x], leftScale));
+                        if (connect) {
+                            g2d.drawLine(x - 1, ylast, x, (int)Math.round(getYCord(function.columnFirst[x], leftScale)));
                         }
+                        g2d.drawLine(x, ymax, x, ymin);
                     }
+                    ylast = (int)Math.round(getYCord(function.columnLast[x], leftScale));
+                    connect = lines && x != function.newestColumn;
                 }
             }
 
@@ -365,51 +986,417 @@ public class Oscilloscope extends Widget {
             }
         }
 
-        class OscilloscopeFunction extends PartWiseLinearFunction {
+        /**
+         * Samples of one oscilloscope channel.
+         *
+         * Stored in a ring buffer of primitive values, ordered by time - with its capacity derived from time scale and sample rate.
+         * Samples older than one sweep (timeScaleMaxInMs) are dropped when new samples arrive -
+         * so the buffer contains exactly the samples currently visible on screen (unless it is full).
+         */
+        class OscilloscopeFunction {
 
-            public double curTime = -100;
+            /** Sample times (in ms since oscilloscope start) and values */
+            private double[] times, values;
 
-            /** UID */
-            private static final long serialVersionUID = -4657542107242253198L;
+            /** Index of oldest sample in ring buffer */
+            private int first;
+
+            /** Number of samples in ring buffer */
+            private int size;
+
+            /** Min/max envelope: minimum, maximum, first and last value per pixel column (columnMin is NaN for empty columns) */
+            double[] columnMin = new double[0], columnMax = new double[0], columnFirst = new double[0], columnLast = new double[0];
+
+            /** Number of pixel columns envelope was calculated for (0 if envelope is invalid) */
+            int envelopeColumns;
+
+            /** Column that contains newest sample */
+            int newestColumn;
+
+            /** Was channel drawn as envelope in last paint? */
+            boolean drawnAsEnvelope;
+
+            /** Time scale envelope was calculated for */
+            private double envelopeTimeScale;
+
+            /** Columns of samples newer than this time have changed since envelope was last updated */
+            private double envelopeDirtyFrom = Double.NEGATIVE_INFINITY;
+
+            public OscilloscopeFunction(int capacity) {
+                times = new double[capacity];
+                values = new double[capacity];
+            }
 
-            public void addNewValue(double time, double d, double lastTime) {
+            /**
+             * Changes capacity of ring buffer. If it is reduced, the oldest samples are dropped.
+             *
+             * @param capacity New capacity
+             */
+            public void setCapacity(int capacity) {
+                if (capacity == times.length) {
+                    return;
+                }
+                int keep = Math.min(size, capacity);
+                double[] newTimes = new double[capacity];
+                double[] newValues = new double[capacity];
+                for (int i = 0; i < keep; i++) {
+                    int index = index(size - keep + i);
+                    newTimes[i] = times[index];
+                    newValues[i] = values[index];
+                }
+                times = newTimes;
+                values = newValues;
+                first = 0;
+                size = keep;
+                invalidateEnvelope();
+            }
 
-                if (time > lastTime) {
-                    // remove entries between lastTime and time
-                    int idx = getInsertIndex(lastTime);
-                    while (idx < nodes.size() && nodes.get(idx).x <= time) {
-                        //System.out.println("removing " + time + " " + lastTime);
-                        nodes.remove(idx);
+            /**
+             * Add new sample. Samples overwritten by the sweep (and oldest sample - if buffer is full) are dropped.
+             *
+             * @param time Time of sample (in ms since oscilloscope start) - must not be smaller than time of last sample
+             * @param value Value of sample
+             */
+            public void addNewValue(double time, double value) {
+                double oldest = time - timeScaleMaxInMs;
+                while (size > 0 && (times[first] <= oldest || size == times.length)) {
+                    if (times[first] > oldest) {
+                        // dropped because buffer is full - the sweep has not passed this column yet
+                        envelopeDirtyFrom = Math.min(envelopeDirtyFrom, times[first]);
+                        droppedSamples++; // only written by sampling thread
                     }
+                    first = next(first);
+                    size--;
+                }
+                int index = first + size;
+                if (index >= times.length) {
+                    index -= times.length;
+                }
+                times[index] = time;
+                values[index] = value;
+                size++;
+            }
 
-                    // add new entry
-                    //System.out.println("adding " + nodes.size());
-                    addEntry(time, d);
+            /**
+             * @return Number of samples in buffer
+             */
+            public int size() {
+                return size;
+            }
+
+            /**
+             * @param i Index of sample (0 is oldest)
+             * @return Time of sample (in ms since oscilloscope start)
+             */
+            public double getTime(int i) {
+                return times[index(i)];
+            }
+
+            /**
+             * @param i Index of sample (0 is oldest)
+             * @return Value of sample
+             */
+            public double getValue(int i) {
+                return values[index(i)];
+            }
+
+            /**
+             * @param time Time (in ms since oscilloscope start)
+             * @return Index of first sample with time >= specified time (size(), if there is no such sample)
+             */
+            public int findIndex(double time) {
+                int low = 0, high = size;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (times[index(mid)] < time) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                return low;
+            }
+
+            /**
+             * @param time Time (in ms since oscilloscope start)
+             * @param columns Number of pixel columns
+             * @return Pixel column that sample with specified time is drawn in
+             */
+            private int getColumn(double time, int columns) {
+                double sweepTime = time - Math.floor(time / timeScaleMaxInMs) * timeScaleMaxInMs;
+                return Math.min(columns - 1, (int)(sweepTime / timeScaleMaxInMs * columns));
+            }
+
+            /**
+             * Envelope needs to be recalculated completely on next call to updateEnvelope()
+             */
+            public void invalidateEnvelope() {
+                envelopeColumns = 0;
+            }
+
+            /**
+             * Brings min/max envelope up to date.
+             * Only pixel columns touched by samples since the last call are recalculated.
+             *
+             * @param columns Number of pixel columns (widget width)
+             */
+            public void updateEnvelope(int columns) {
+                if (size == 0 || columns <= 0) {
+                    invalidateEnvelope();
+                    return;
+                }
+                double newest = getTime(size - 1);
+                int firstColumn = getColumn(envelopeDirtyFrom, columns);
+                int lastColumn = getColumn(newest, columns);
+                boolean wrapped = Math.floor(newest / timeScaleMaxInMs) != Math.floor(envelopeDirtyFrom / timeScaleMaxInMs);
+                if ((wrapped && firstColumn <= lastColumn) || columns != envelopeColumns || timeScaleMaxInMs != envelopeTimeScale || columnMin.length < columns || newest - envelopeDirtyFrom >= timeScaleMaxInMs) {
+                    if (columnMin.length < columns) {
+                        columnMin = new double[columns];
+                        columnMax = new double[columns];
+                        columnFirst = new double[columns];
+                        columnLast = new double[columns];
+                    }
+                    envelopeColumns = columns;
+                    envelopeTimeScale = timeScaleMaxInMs;
+                    clearColumns(0, columns - 1);
+                    accumulate(0, size, 0, columns - 1);
+                } else {
+                    double columnTime = timeScaleMaxInMs / columns;
+                    double from = envelopeDirtyFrom - 2 * columnTime;
+                    double to = newest + 2 * columnTime;
+
+                    // samples in dirty columns are from current and (older ones) from previous sweep
+                    clearColumns(firstColumn, lastColumn);
+                    int current = findIndex(from);
+                    accumulate(findIndex(from - timeScaleMaxInMs), Math.min(current, findIndex(to - timeScaleMaxInMs)), firstColumn, lastColumn);
+                    accumulate(current, size, firstColumn, lastColumn);
+                }
+                newestColumn = lastColumn;
+                envelopeDirtyFrom = newest;
+            }
+
+            /**
+             * Clears range of columns (wraps around if firstColumn > lastColumn)
+             */
+            private void clearColumns(int firstColumn, int lastColumn) {
+                if (firstColumn <= lastColumn) {
+                    Arrays.fill(columnMin, firstColumn, lastColumn + 1, Double.NaN);
+                } else {
+                    Arrays.fill(columnMin, firstColumn, envelopeColumns, Double.NaN);
+                    Arrays.fill(columnMin, 0, lastColumn + 1, Double.NaN);
+                }
+            }
+
+            /**
+             * Adds samples to envelope
+             *
+             * @param from Index of first sample to add
+             * @param to Index after last sample to add
+             * @param firstColumn First column to update
+             * @param lastColumn Last column to update (wraps around if firstColumn > lastColumn)
+             */
+            private void accumulate(int from, int to, int firstColumn, int lastColumn) {
+                for (int i = from; i < to; i++) {
+                    int index = index(i);
+                    int column = getColumn(times[index], envelopeColumns);
+                    if (firstColumn <= lastColumn ? (column < firstColumn || column > lastColumn) : (column < firstColumn && column > lastColumn)) {
+                        continue;
+                    }
+                    double value = values[index];
+                    if (Double.isNaN(columnMin[column])) {
+                        columnMin[column] = value;
+                        columnMax[column] = value;
+                        columnFirst[column] = value;
+                    } else {
+                        columnMin[column] = Math.min(columnMin[column], value);
+                        columnMax[column] = Math.max(columnMax[column], value);
+                    }
+                    columnLast[column] = value;
+                }
+            }
+
+            private int index(int i) {
+                int index = first + i;
+                return index >= times.length ? index - times.length : index;
+            }
+
+            private int next(int index) {
+                return index + 1 == times.length ? 0 : index + 1;
+            }
+        }
+
+        /**
+         * Long-term history of one channel.
+         *
+         * Mipmap pyramid of the sample stream: level n contains min, max and mean of 4^n consecutive samples per entry.
+         * All levels have the same (fixed) capacity - so finer levels cover shorter time spans.
+         */
+        class HistoryPyramid {
+
+            /** Levels of pyramid (level 0 contains raw samples) */
+            final HistoryLevel[] levels = new HistoryLevel[HISTORY_LEVELS];
+
+            /** Number of entries of each level that have not been aggregated to next level yet - and their aggregated values */
+            final int[] pendingCount = new int[HISTORY_LEVELS];
+            final double[] pendingTime = new double[HISTORY_LEVELS], pendingMin = new double[HISTORY_LEVELS], pendingMax = new double[HISTORY_LEVELS], pendingSum = new double[HISTORY_LEVELS];
+
+            /** Time of newest sample (in ms since oscilloscope start) - NaN if there is none */
+            double newest = Double.NaN;
+
+            public HistoryPyramid() {
+                for (int i = 0; i < levels.length; i++) {
+                    levels[i] = new HistoryLevel(HISTORY_LEVEL_CAPACITY);
+                }
+            }
+
+            /**
+             * Add new sample
+             *
+             * @param time Time of sample (in ms since oscilloscope start) - must not be smaller than time of last sample
+             * @param value Value of sample
+             */
+            public void add(double time, double value) {
+                newest = time;
+                add(0, time, value, value, value);
+            }
+
+            private void add(int level, double time, double min, double max, double mean) {
+                levels[level].add(time, min, max, mean);
+                if (level + 1 == levels.length) {
+                    return;
+                }
+                if (pendingCount[level] == 0) {
+                    pendingTime[level] = time;
+                    pendingMin[level] = min;
+                    pendingMax[level] = max;
+                    pendingSum[level] = mean;
                 } else {
-                    // remove entries between lastTime and time
-                    int idx = getInsertIndex(lastTime);
-                    while (nodes.size() > idx) {
-                        nodes.remove(nodes.size() - 1);
+                    pendingMin[level] = Math.min(pendingMin[level], min);
+                    pendingMax[level] = Math.max(pendingMax[level], max);
+                    pendingSum[level] += mean;
+                }
+                pendingCount[level]++;
+                if (pendingCount[level] == 4) {
+                    pendingCount[level] = 0;
+                    add(level + 1, pendingTime[level], pendingMin[level], pendingMax[level], pendingSum[level] / 4);
+                }
+            }
+
+            /**
+             * @return Time of oldest sample in history (in ms since oscilloscope start) - NaN if there is none
+             */
+            public double getOldest() {
+                double oldest = Double.NaN;
+                for (HistoryLevel level : levels) {
+                    if (level.size() > 0) {
+                        oldest = Double.isNaN(oldest) ? level.getTime(0) : Math.min(oldest, level.getTime(0));
                     }
-                    while (nodes.size() > 0 && nodes.get(0).x <= time) {
-                        nodes.remove(0);
+                }
+                return oldest;
+            }
+
+            /**
+             * Selects pyramid level for drawing the specified time span:
+             * the finest level that covers the time span (as far as history reaches back) with no more than the specified number of entries
+             *
+             * @param start Start of time span (in ms since oscilloscope start)
+             * @param end End of time span (in ms since oscilloscope start)
+             * @param maxEntries Maximum number of entries (typically related to widget width)
+             * @return Selected level
+             */
+            public int selectLevel(double start, double end, int maxEntries) {
+                double reach = Math.max(start, getOldest());
+                for (int i = 0; i < levels.length - 1; i++) {
+                    HistoryLevel level = levels[i];
+                    if (level.size() > 0 && level.getTime(0) <= reach && level.findIndex(end) - level.findIndex(start) <= maxEntries) {
+                        return i;
                     }
+                }
+                return levels.length - 1;
+            }
+        }
+
+        /**
+         * One level of history pyramid: Ring buffer with time (of first sample), min, max and mean of each entry
+         */
+        class HistoryLevel {
+
+            /** Entry data */
+            private final double[] times, mins, maxs, means;
+
+            /** Index of oldest entry in ring buffer */
+            private int first;
 
-                    // add new entries
-                    addEntry(time + timeScaleMaxInMs, d);
-                    addEntry(time, d);
-                    addEntry(lastTime - timeScaleMaxInMs, nodes.get(nodes.size() - 1).y);
+            /** Number of entries in ring buffer */
+            private int size;
+
+            public HistoryLevel(int capacity) {
+                times = new double[capacity];
+                mins = new double[capacity];
+                maxs = new double[capacity];
+                means = new double[capacity];
+            }
+
+            /**
+             * Add new entry (oldest entry is dropped if buffer is full)
+             */
+            public void add(double time, double min, double max, double mean) {
+                if (size == times.length) {
+                    first = index(1);
+                    size--;
                 }
+                int index = index(size);
+                times[index] = time;
+                mins[index] = min;
+                maxs[index] = max;
+                means[index] = mean;
+                size++;
+            }
 
-                curTime = time;
+            /**
+             * @return Number of entries
+             */
+            public int size() {
+                return size;
             }
 
-            List<PartWiseLinearFunction.Node> getNodeList() {
-                return nodes;
+            public double getTime(int i) {
+                return times[index(i)];
+            }
+
+            public double getMin(int i) {
+                return mins[index(i)];
+            }
+
+            public double getMax(int i) {
+                return maxs[index(i)];
+            }
+
+            public double getMean(int i) {
+                return means[index(i)];
+            }
+
+            /**
+             * @param time Time (in ms since oscilloscope start)
+             * @return Index of first entry with time >= specified time (size(), if there is no such entry)
+             */
+            public int findIndex(double time) {
+                int low = 0, high = size;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (times[index(mid)] < time) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                return low;
+            }
+
+            private int index(int i) {
+                int index = first + i;
+                return index >= times.length ? index - times.length : index;
             }
         }
     }
-
-    /** Data type of this class */
-    public final static DataTypeBase TYPE = new DataType<OscilloscopeUI.OscilloscopeFunction>(OscilloscopeUI.OscilloscopeFunction.class);
 }
@@ -33,6 +33,7 @@ import org.finroc.tools.gui.WidgetPort;
 import org.finroc.tools.gui.WidgetUI;
 import org.finroc.tools.gui.commons.fastdraw.BufferedImageRGB;
 import org.finroc.tools.gui.util.embeddedfiles.EmbeddedPaintable;
+import org.finroc.tools.gui.util.embeddedfiles.FileManager;
 
 import org.finroc.core.port.PortCreationInfo;
 
@@ -60,17 +61,35 @@ public class Picture extends Widget {
 
     class PictureUI extends WidgetUI {
 
+        /** UID */
+        private static final long serialVersionUID = -1151555070135103957L;
+
+        /** Manager of embedded files - obtained on the event dispatch thread before each frame, as the widget tree must not be accessed by render threads */
+        private volatile FileManager fileManager;
+
         public PictureUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
             widgetPropertiesChanged();
         }
 
-        /** UID */
-        private static final long serialVersionUID = -1151555070135103957L;
+        @Override
+        protected void updateForNextFrame() {
+            fileManager = getRoot().getEmbeddedFileManager();
+        }
 
         @Override
         protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized) throws OperationNotSupportedException {
-            cache.fill(getBackground().getRGB());
+            renderToCache(cache, renderSize, resized, null);
+        }
+
+        @Override
+        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion) throws OperationNotSupportedException {
+            if (dirtyRegion == null) {
+                cache.fill(getBackground().getRGB());
+            } else {
+                cache.drawFilledRectangle(dirtyRegion, getBackground().getRGB());
+            }
             if (picture == null) {
                 return;
             }
@@ -78,9 +97,13 @@ public class Picture extends Widget {
             Graphics2D g2d = cache.getGraphics();
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-            g2d.setClip(0, 0, renderSize.width, renderSize.height);
+            g2d.setClip(dirtyRegion != null ? dirtyRegion : new Rectangle(renderSize));
 
-            picture.paintToTopLeft(g2d, scaleToFit ? new Rectangle(renderSize) : null, preserveAspectRatio, getRoot().getEmbeddedFileManager());
+            FileManager efm = fileManager;
+            if (efm == null) { // not rendered in background yet - so we are on the event dispatch thread
+                efm = getRoot().getEmbeddedFileManager();
+            }
+            picture.paintToTopLeft(g2d, scaleToFit ? new Rectangle(renderSize) : null, preserveAspectRatio, efm);
         }
 
         @Override
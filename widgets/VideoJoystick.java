@@ -76,31 +76,39 @@ public class VideoJoystick extends VirtualJoystick {
         }
 
         @Override
-        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized) throws OperationNotSupportedException {
-            HasBlittable b = video.getAutoLocked();
-            if (b == null || imageIndexInSource >= b.getNumberOfBlittables()) {
-                cache.fill(0);
-            } else {
-                b.getBlittable(imageIndexInSource).blitTo(cache, new Rectangle(renderSize));
-            }
+        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion) throws OperationNotSupportedException {
+            super.renderToCache(cache, renderSize, resized, null); // line to joystick point may cross whole video
+        }
 
-            // initial position
-            if (curPos == null) {
-                curPos = getCenter();
+        @Override
+        protected void renderBackground(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion, Point pos) throws OperationNotSupportedException {
+            HasBlittable b = video.getAutoLocked();
+            try {
+                if (b == null || imageIndexInSource >= b.getNumberOfBlittables()) {
+                    cache.fill(0);
+                } else {
+                    b.getBlittable(imageIndexInSource).blitTo(cache, new Rectangle(renderSize));
+                }
+            } finally {
+                releaseAllLocks();
             }
 
             // draw line
             Point center = getCenter();
-            if (!center.equals(curPos)) {
-                cache.drawLine(center, curPos, Color.white);
+            if (!center.equals(pos)) {
+                cache.drawLine(center, pos, Color.white);
             }
-            releaseAllLocks();
+        }
+
+        @Override
+        protected boolean isPointRedrawSufficient() {
+            return false;
         }
 
         @Override
         public void portChanged(AbstractPort origin, HasBlittable value) {
             setChanged();
-            repaint();
+            scheduleRepaint();
         }
     }
 
@@ -30,7 +30,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
-import java.awt.Image;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -47,6 +46,9 @@ import org.finroc.tools.gui.WidgetOutput;
 import org.finroc.tools.gui.WidgetPort;
 import org.finroc.tools.gui.WidgetUI;
 import org.finroc.tools.gui.commons.fastdraw.BufferedImageRGB;
+import org.finroc.tools.gui.commons.fastdraw.CompressedImage;
+import org.finroc.tools.gui.commons.fastdraw.CompressedImageDecoder;
+import org.finroc.tools.gui.commons.fastdraw.ImageScaler;
 import org.finroc.tools.gui.util.gui.FileDialog;
 import org.finroc.tools.gui.util.gui.MAction;
 import org.finroc.tools.gui.util.gui.MActionEvent;
@@ -109,7 +111,17 @@ public class VideoRenderer extends Widget {
 
         MToolBar toolbar;
 
-        private BufferedImageRGB temp_image = null;
+        /** Scales images (if scaleImage is set) */
+        private final ImageScaler scaler = new ImageScaler();
+
+        /** Decodes compressed images (e.g. from MJPEG cameras) in background */
+        private final CompressedImageDecoder decoder = new CompressedImageDecoder(new Runnable() {
+            @Override
+            public void run() {
+                setChanged();
+                scheduleRepaint();
+            }
+        });
 
         private Point marking_start_point;
 
@@ -128,6 +140,7 @@ public class VideoRenderer extends Widget {
 
         public VideoWindowUI() {
             super(RenderMode.Cached);
+            setBackgroundRenderingSupported(true);
             this.setLayout(new BorderLayout());
             videoInput.addChangeListener(this);
             //      videoSelection.addChangeListener(this);
@@ -170,9 +183,34 @@ public class VideoRenderer extends Widget {
                 return;
             }
             Blittable bl = b.getBlittable(imageIndexInSource);
+            BufferedImageRGB decoded = null;
+            if (bl instanceof CompressedImage) {
+                decoder.setTargetSize(scaleImage ? renderSize : null); // scaled images need not be decoded with full resolution
+                decoded = decoder.acquireLatest();
+                if (decoded != null) {
+                    bl = decoded;
+                }
+            }
+            try {
+                renderBlittable(bl, cache, renderSize);
+            } finally {
+                if (decoded != null) {
+                    decoder.release();
+                }
+                releaseAllLocks();
+            }
+        }
+
+        /**
+         * Renders image to cache
+         *
+         * @param bl Image to render
+         * @param cache Cache to render to
+         * @param renderSize Size of area to render
+         */
+        private void renderBlittable(Blittable bl, BufferedImageRGB cache, Dimension renderSize) {
             if (bl.getWidth() == 0 || bl.getHeight() == 0) {
                 cache.fill(0);
-                releaseAllLocks();
                 return;
             }
 
@@ -183,15 +221,10 @@ public class VideoRenderer extends Widget {
             }
 
             if (scaleImage) {
-                BufferedImageRGB input_image = new BufferedImageRGB(bl.getWidth(), bl.getHeight());
-                bl.blitTo(input_image);
-
-                bl = this.getScaledInstance(input_image, renderSize, scaleMode, keepAspectRatio);
+                scaleToCache(bl, cache, renderSize);
+            } else {
+                bl.blitTo(cache, new Rectangle(renderSize));
             }
-
-            bl.blitTo(cache, new Rectangle(renderSize));
-
-            releaseAllLocks();
         }
 
         @Override
@@ -216,8 +249,12 @@ public class VideoRenderer extends Widget {
 
         @Override
         public void portChanged(AbstractPort origin, HasBlittable value) {
+            if (value != null && imageIndexInSource < value.getNumberOfBlittables() && value.getBlittable(imageIndexInSource) instanceof CompressedImage) {
+                decoder.offer((CompressedImage)value.getBlittable(imageIndexInSource)); // repaint once frame is decoded
+                return;
+            }
             this.setChanged();
-            repaint();
+            scheduleRepaint();
         }
 
         @Override
@@ -326,53 +363,41 @@ public class VideoRenderer extends Widget {
             }
         }
 
-        private BufferedImageRGB getScaledInstance(BufferedImageRGB input_image, Dimension renderSize, ScaleMode scaleMode, boolean keepAspectRatio) {
-            int scale_mode = Image.SCALE_FAST;
-
-            if (scaleMode == ScaleMode.scaleFast) {
-                scale_mode = Image.SCALE_FAST;
-            }
-            if (scaleMode == ScaleMode.scaleSmooth) {
-                scale_mode = Image.SCALE_SMOOTH;
-            }
-            if (scaleMode == ScaleMode.scaleAreaAverage) {
-                scale_mode = Image.SCALE_AREA_AVERAGING;
-            }
-            Image scaled_image = null;
+        /**
+         * Scales image to cache
+         *
+         * @param image Image to scale
+         * @param cache Cache to render to
+         * @param renderSize Size of area to render
+         */
+        private void scaleToCache(Blittable image, BufferedImageRGB cache, Dimension renderSize) {
+            Rectangle dest = new Rectangle(renderSize);
             if (keepAspectRatio) {
-
-                double x_aspect = (double) input_image.getWidth() / (double) renderSize.width;
-                double y_aspect = (double) input_image.getHeight() / (double) renderSize.height;
-
+                double x_aspect = (double) image.getWidth() / (double) renderSize.width;
+                double y_aspect = (double) image.getHeight() / (double) renderSize.height;
                 if (x_aspect > y_aspect) {
-                    scaled_image = input_image.getBufferedImage().getScaledInstance(renderSize.width,
-                                   -1,
-                                   scale_mode);
-
+                    dest.height = Math.max(1, (int)Math.round(image.getHeight() / x_aspect));
                 } else {
-                    scaled_image = input_image.getBufferedImage().getScaledInstance(-1,
-                                   renderSize.height,
-                                   scale_mode);
-
+                    dest.width = Math.max(1, (int)Math.round(image.getWidth() / y_aspect));
                 }
-            } else {
-                scaled_image = input_image.getBufferedImage().getScaledInstance(renderSize.width,
-                               renderSize.height,
-                               scale_mode);
             }
 
-            if ((temp_image == null) ||
-                    (temp_image.getWidth() != renderSize.width) ||
-                    (temp_image.getHeight() != renderSize.height)) {
-                temp_image = new BufferedImageRGB(renderSize.width,
-                                                  renderSize.height);
+            ImageScaler.Filter filter = ImageScaler.Filter.Nearest;
+            if (scaleMode == ScaleMode.scaleSmooth) {
+                filter = ImageScaler.Filter.Bilinear;
             }
+            if (scaleMode == ScaleMode.scaleAreaAverage) {
+                filter = ImageScaler.Filter.Box;
+            }
+            scaler.scale(image, cache, dest, filter);
 
-            Graphics g = temp_image.getBufferedImage().createGraphics();
-            g.drawImage(scaled_image, 0, 0, null);
-            g.dispose();
-
-            return temp_image;
+            // clear remaining area
+            if (dest.width < renderSize.width) {
+                cache.drawFilledRectangle(new Rectangle(dest.width, 0, renderSize.width - dest.width, renderSize.height), 0);
+            }
+            if (dest.height < renderSize.height) {
+                cache.drawFilledRectangle(new Rectangle(0, dest.height, dest.width, renderSize.height - dest.height), 0);
+            }
         }
 
     }
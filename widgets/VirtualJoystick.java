@@ -99,7 +99,11 @@ public class VirtualJoystick extends Picture {
 
         private Point center;
 
+        /** Batch for publishing x, y and twist together */
+        private final WidgetOutput.PublishBatch publishBatch = new WidgetOutput.PublishBatch();
+
         VirtualJoystickUI() {
+            setBackgroundRenderingSupported(false); // joystick point and its position are modified by mouse handlers on the event dispatch thread
             setLayout(new BorderLayout());
             JComponent jp = new InvisibleComponent();
             this.add(jp, BorderLayout.CENTER);
@@ -109,13 +113,14 @@ public class VirtualJoystick extends Picture {
         }
 
         @Override
-        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized) throws OperationNotSupportedException {
+        protected void renderToCache(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion) throws OperationNotSupportedException {
             Rectangle r = new Rectangle(renderSize);
-            if (picture != null) {
-                super.renderToCache(cache, renderSize, resized);
-            } else {
-                cache.drawFilledRectangle(r, joystickBackground.getRGB());
+            Point pos = curPos;
+            if (pos == null || resized) {
+                pos = getCenter();
+                curPos = pos;
             }
+            renderBackground(cache, renderSize, resized, dirtyRegion, pos);
 
             if (circle == null) {
                 try {
@@ -124,15 +129,45 @@ public class VirtualJoystick extends Picture {
                     throw new RuntimeException(e);
                 }
             }
-            if (curPos == null || resized) {
-                curPos = getCenter();
-            }
 
             center = getCenter();
             cache.drawRectangle(r, foreground.getRGB());
             cache.drawHorizontalLine(0, center.y, renderSize.width, foreground.getRGB());
             cache.drawVerticalLine(center.x, 0, renderSize.height, foreground.getRGB());
-            circle.blitToInColor(cache, new Point(curPos.x - 10, curPos.y - 10), circle.getBounds(), pointColor != 0 ? pointColor : 0xFF00);
+            circle.blitToInColor(cache, new Point(pos.x - 10, pos.y - 10), circle.getBounds(), pointColor != 0 ? pointColor : 0xFF00);
+        }
+
+        /**
+         * Renders background of joystick (picture or background color).
+         * Scale and joystick point are drawn on top of it.
+         *
+         * @param cache Cache to render to
+         * @param renderSize Size of area to render
+         * @param resized Has cache been resized (or reallocated) since last call?
+         * @param dirtyRegion Region to re-render (null = whole component)
+         * @param pos Position of joystick point
+         */
+        protected void renderBackground(BufferedImageRGB cache, Dimension renderSize, boolean resized, Rectangle dirtyRegion, Point pos) throws OperationNotSupportedException {
+            if (picture != null) {
+                super.renderToCache(cache, renderSize, resized, dirtyRegion);
+            } else {
+                cache.drawFilledRectangle(dirtyRegion != null ? dirtyRegion : new Rectangle(renderSize), joystickBackground.getRGB());
+            }
+        }
+
+        /**
+         * @return True if only the area of old and new joystick point needs to be redrawn when the joystick point moves
+         */
+        protected boolean isPointRedrawSufficient() {
+            return true;
+        }
+
+        /**
+         * @param pos Position of joystick point
+         * @return Area in cache covered by joystick point at this position
+         */
+        private Rectangle getPointBounds(Point pos) {
+            return new Rectangle(pos.x - 10, pos.y - 10, circle.getWidth(), circle.getHeight());
         }
 
         Point getCenter() {
@@ -159,12 +194,11 @@ public class VirtualJoystick extends Picture {
         public void mouseMoved(MouseEvent e) {}
 
         public void publishValues(double newX, double newY) {
-            x.publish(newX);
-            y.publish(newY);
+            publishBatch.add(x, newX).add(y, newY);
             Pose3D twistBuffer = twist.getUnusedBuffer();
             twistBuffer.set(xAxisTwistMapping == null ? Pose3D.Component.X : xAxisTwistMapping, newX);
             twistBuffer.set(yAxisTwistMapping == null ? Pose3D.Component.Yaw : yAxisTwistMapping, newY);
-            twist.publish(twistBuffer);
+            publishBatch.add(twist, twistBuffer).publish();
         }
 
         public void setPos(Point p) {
@@ -173,14 +207,14 @@ public class VirtualJoystick extends Picture {
             double yCenter = (yTop + yBottom) / 2;
             double widgetCenterX = this.getCenter().x;
             double widgetCenterY = this.getCenter().y;
+            Rectangle dirty = (curPos != null && circle != null) ? getPointBounds(curPos) : null;
 
             if (p == null) {
                 publishValues(xCenter, yCenter);
                 curPos = getCenter();
                 pointColor = 0xFF00;
             } else {
-                curPos.x = Util.toInterval(p.x, 10, getRenderWidth() - 11);
-                curPos.y = Util.toInterval(p.y, 10, getRenderHeight() - 11);
+                curPos = new Point(Util.toInterval(p.x, 10, getRenderWidth() - 11), Util.toInterval(p.y, 10, getRenderHeight() - 11)); // new object, as cache might be rendered concurrently
                 double xf = 0;
                 double yf = 0;
                 if (curPos.x > widgetCenterX + zeroRadius) {
@@ -208,8 +242,16 @@ public class VirtualJoystick extends Picture {
                 publishValues(xf * xRight + (1 - xf) * xLeft, yf * yBottom + (1 - yf) * yTop);
                 pointColor = (255 - colorFactor) << 8 | colorFactor << 16;
             }
-            setChanged();
-            repaint();
+
+            // only area of old and new joystick point needs to be redrawn
+            if (dirty != null && isPointRedrawSufficient()) {
+                dirty.add(getPointBounds(curPos));
+                setChanged(dirty);
+                repaint(dirty.x + getRenderX(), dirty.y + getRenderY(), dirty.width, dirty.height);
+            } else {
+                setChanged();
+                repaint();
+            }
         }
     }
 }